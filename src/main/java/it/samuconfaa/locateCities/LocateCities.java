@@ -6,23 +6,33 @@ import it.samuconfaa.locateCities.commands.CityCommand;
 import it.samuconfaa.locateCities.commands.CityTabCompleter;
 import it.samuconfaa.locateCities.database.DatabaseManager;
 import it.samuconfaa.locateCities.database.OfflineCityDatabase;
+import it.samuconfaa.locateCities.listeners.AsyncTabCompleteListener;
+import it.samuconfaa.locateCities.listeners.PlayerConnectionListener;
+import it.samuconfaa.locateCities.managers.ChunkPrewarmer;
 import it.samuconfaa.locateCities.managers.CityManager;
 import it.samuconfaa.locateCities.managers.ConfigManager;
 import it.samuconfaa.locateCities.managers.EconomyManager;
+import it.samuconfaa.locateCities.managers.PermissionCache;
 import it.samuconfaa.locateCities.managers.StatisticsManager;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class LocateCities extends JavaPlugin {
 
+    public static final String GAZETTEER_FILE = "gazetteer.bin";
+
     private CityManager cityManager;
     private ConfigManager configManager;
     private EconomyManager economyManager;
+    private PermissionCache permissionCache;
     private RateLimiter rateLimiter;
     private StatisticsManager statisticsManager;
     private DatabaseManager databaseManager;
+    private ChunkPrewarmer chunkPrewarmer;
 
     private boolean pluginInitialized = false;
     private final Logger logger = getLogger();
@@ -32,6 +42,7 @@ public class LocateCities extends JavaPlugin {
         try {
             initializePlugin();
             registerCommands();
+            registerListeners();
             scheduleTasks();
             logStartupInfo();
 
@@ -53,11 +64,13 @@ public class LocateCities extends JavaPlugin {
             logger.info("Inizializzazione ConfigManager...");
             configManager = new ConfigManager(this);
 
+            permissionCache = new PermissionCache(configManager);
+
             logger.info("Inizializzazione EconomyManager...");
             economyManager = new EconomyManager(this);
 
             logger.info("Inizializzazione RateLimiter...");
-            rateLimiter = new RateLimiter(configManager);
+            rateLimiter = new RateLimiter(configManager, permissionCache);
 
             logger.info("Inizializzazione StatisticsManager...");
             statisticsManager = new StatisticsManager(this);
@@ -70,6 +83,9 @@ public class LocateCities extends JavaPlugin {
                 logger.warning("Controllo integrità database fallito - il database potrebbe essere corrotto");
             }
 
+            logger.info("Caricamento gazetteer offline...");
+            loadGazetteer();
+
             logger.info("Inizializzazione CityManager...");
             cityManager = new CityManager(this, configManager);
 
@@ -81,6 +97,25 @@ public class LocateCities extends JavaPlugin {
         }
     }
 
+    private void loadGazetteer() {
+        File baseFile = new File(getDataFolder(), GAZETTEER_FILE);
+        File gazetteerFile = OfflineCityDatabase.resolveGazetteerFile(baseFile);
+
+        // Nessun file è ancora mappato: le versioni sostituite da un import si possono eliminare
+        OfflineCityDatabase.deleteStaleGazetteers(baseFile, gazetteerFile);
+
+        // Il file incluso nel jar viene estratto una volta: il memory mapping richiede un file su disco
+        if (gazetteerFile.equals(baseFile) && !gazetteerFile.exists() && getResource(GAZETTEER_FILE) != null) {
+            saveResource(GAZETTEER_FILE, false);
+        }
+
+        try {
+            OfflineCityDatabase.loadGazetteer(gazetteerFile);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Impossibile aprire " + gazetteerFile.getName() + ", uso solo le città integrate", e);
+        }
+    }
+
     private void registerCommands() {
         try {
             // Registra i comandi con i nuovi tab completers
@@ -90,7 +125,7 @@ public class LocateCities extends JavaPlugin {
             if (cittaCommand != null) {
                 cittaCommand.setExecutor(new CityCommand(this, cityManager, economyManager,
                         rateLimiter, statisticsManager, databaseManager));
-                cittaCommand.setTabCompleter(new CityTabCompleter());
+                cittaCommand.setTabCompleter(new CityTabCompleter(cityManager));
             } else {
                 throw new RuntimeException("Comando 'citta' non trovato in plugin.yml");
             }
@@ -98,7 +133,10 @@ public class LocateCities extends JavaPlugin {
             var adminCommand = getCommand("cittaadmin");
             if (adminCommand != null) {
                 adminCommand.setExecutor(new AdminCommand(this, cityManager, statisticsManager));
-                adminCommand.setTabCompleter(new AdminTabCompleter());
+                AdminTabCompleter adminTabCompleter = new AdminTabCompleter(cityManager);
+                adminCommand.setTabCompleter(adminTabCompleter);
+                // Tiene aggiornato l'elenco dei mondi per setworld
+                getServer().getPluginManager().registerEvents(adminTabCompleter, this);
             } else {
                 throw new RuntimeException("Comando 'cittaadmin' non trovato in plugin.yml");
             }
@@ -111,6 +149,39 @@ public class LocateCities extends JavaPlugin {
         }
     }
 
+    private void registerListeners() {
+        try {
+            logger.info("Registrazione listener...");
+
+            getServer().getPluginManager().registerEvents(new PlayerConnectionListener(databaseManager, permissionCache), this);
+
+            // Su Paper il tab completion gira fuori dal main thread; altrove restano i TabCompleter
+            if (AsyncTabCompleteListener.isSupported()) {
+                AsyncTabCompleteListener tabListener = new AsyncTabCompleteListener();
+                String prefix = getName().toLowerCase();
+                for (String name : new String[]{"citta", "cittaadmin"}) {
+                    var command = getCommand(name);
+                    if (command != null && command.getTabCompleter() != null) {
+                        tabListener.register(command, command.getTabCompleter(),
+                                name.equals("cittaadmin") ? "locatecities.admin" : "locatecities.use", prefix);
+                    }
+                }
+                getServer().getPluginManager().registerEvents(tabListener, this);
+                logger.info("Tab completion asincrono attivo (Paper)");
+            }
+
+            // Dopo un reload i giocatori sono già online: precarica subito l'indice cooldown
+            getServer().getOnlinePlayers().forEach(player ->
+                    databaseManager.warmCooldownIndexAsync(player.getName()));
+
+            logger.info("Listener registrati correttamente");
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Errore durante la registrazione dei listener", e);
+            throw new RuntimeException("Registrazione listener fallita", e);
+        }
+    }
+
     private void scheduleTasks() {
         try {
             logger.info("Schedulazione task periodici ottimizzati...");
@@ -163,6 +234,18 @@ public class LocateCities extends JavaPlugin {
                 }
             }, 20L * 259200L, 20L * 259200L); // 3 giorni
 
+            // Pre-generazione chunk delle città più cercate (solo Paper)
+            if (configManager.isChunkPrewarmEnabled()) {
+                if (ChunkPrewarmer.isSupported()) {
+                    chunkPrewarmer = new ChunkPrewarmer(this, cityManager, statisticsManager, configManager);
+                    chunkPrewarmer.start();
+                    logger.info("Pre-warming chunk attivo per le " + configManager.getChunkPrewarmTopCities() +
+                            " città più cercate");
+                } else {
+                    logger.warning("Pre-warming chunk richiede Paper (caricamento chunk asincrono), disattivato");
+                }
+            }
+
             logger.info("Task ottimizzati schedulati correttamente");
 
         } catch (Exception e) {
@@ -223,6 +306,14 @@ public class LocateCities extends JavaPlugin {
             // Cancella tutti i task schedulati PRIMA di tutto
             getServer().getScheduler().cancelTasks(this);
 
+            if (chunkPrewarmer != null) {
+                chunkPrewarmer.shutdown(); // Rilascia i ticket dei chunk
+            }
+
+            if (economyManager != null) {
+                economyManager.shutdown(); // Prelievi già confermati ma non ancora eseguiti
+            }
+
             // NUOVO: Shutdown ottimizzato dei manager
             if (cityManager != null) {
                 cityManager.shutdown(); // Nuovo metodo per cleanup asincrono
@@ -236,13 +327,17 @@ public class LocateCities extends JavaPlugin {
                 databaseManager.close(); // Già ottimizzato
             }
 
+            OfflineCityDatabase.unloadGazetteer();
+
             // Pulizia riferimenti
             cityManager = null;
             configManager = null;
             economyManager = null;
+            permissionCache = null;
             rateLimiter = null;
             statisticsManager = null;
             databaseManager = null;
+            chunkPrewarmer = null;
 
             pluginInitialized = false;
 
@@ -268,6 +363,13 @@ public class LocateCities extends JavaPlugin {
         return economyManager;
     }
 
+    public PermissionCache getPermissionCache() {
+        if (permissionCache == null) {
+            throw new IllegalStateException("PermissionCache non disponibile");
+        }
+        return permissionCache;
+    }
+
     public RateLimiter getRateLimiter() {
         if (rateLimiter == null) {
             throw new IllegalStateException("RateLimiter non disponibile");
@@ -296,6 +398,13 @@ public class LocateCities extends JavaPlugin {
         return databaseManager;
     }
 
+    /**
+     * Null se il pre-warming chunk è disattivato o non supportato dal server
+     */
+    public ChunkPrewarmer getChunkPrewarmer() {
+        return chunkPrewarmer;
+    }
+
     /**
      * Verifica se il plugin è correttamente inizializzato
      */
@@ -326,7 +435,8 @@ public class LocateCities extends JavaPlugin {
             }
 
             if (cityManager != null) {
-                info.append("Cache size: ").append(cityManager.getCacheSize()).append("\n");
+                info.append("Cache: ").append(cityManager.getCacheStats()).append("\n");
+                info.append("Geocoding: ").append(cityManager.getGeocodingStats()).append("\n");
             }
 
             if (statisticsManager != null) {
@@ -1,189 +1,161 @@
 package it.samuconfaa.locateCities;
 
 import it.samuconfaa.locateCities.managers.ConfigManager;
+import it.samuconfaa.locateCities.managers.PermissionCache;
 import org.bukkit.entity.Player;
 
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
-
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rate limiting per giocatore, senza lock.
+ *
+ * Ogni UUID ha un array di timestamp primitivi (uno per tipo di azione) aggiornato con
+ * compare-and-set: giocatori diversi non condividono mai un monitor. Le entry inattive
+ * scadono con una coda in ordine di scadenza, esaminata solo in testa, invece di
+ * scansioni complete della mappa.
+ */
 public class RateLimiter {
 
+    private static final int SEARCH = 0;
+    private static final int TELEPORT = 1;
+
     private final ConfigManager configManager;
+    private final PermissionCache permissionCache;
+
+    private final ConcurrentHashMap<UUID, AtomicLongArray> lastActions = new ConcurrentHashMap<>(64, 0.75f, 4);
 
-    // Strutture ottimizzate con cleanup automatico
-    private final ConcurrentMap<String, Long> lastSearchTime;
-    private final ConcurrentMap<String, Long> lastTeleportTime;
+    // Entry in ordine di scadenza: chi è ancora attivo viene riaccodato
+    private final ConcurrentLinkedQueue<Expiry> expiryQueue = new ConcurrentLinkedQueue<>();
 
-    // Contatori per cleanup automatico
     private final AtomicLong lastCleanup = new AtomicLong(System.currentTimeMillis());
     private static final long CLEANUP_INTERVAL = 300_000L; // 5 minuti
-    private static final long ENTRY_TTL = 3600_000L; // 1 ora
-    private static final int MAX_ENTRIES = 1000; // Limite massimo entry
+    private static final long ENTRY_TTL = 3600_000L; // 1 ora (oltre ogni cooldown consentito)
 
-    public RateLimiter(ConfigManager configManager) {
+    public RateLimiter(ConfigManager configManager, PermissionCache permissionCache) {
         this.configManager = configManager;
-
-        // HashMap con dimensione iniziale ottimizzata
-        this.lastSearchTime = new ConcurrentHashMap<>(64, 0.75f, 2);
-        this.lastTeleportTime = new ConcurrentHashMap<>(64, 0.75f, 2);
+        this.permissionCache = permissionCache;
     }
 
     public boolean canSearch(Player player) {
-        if (!configManager.isRateLimitEnabled()) return true;
-        if (player.hasPermission("locatecities.noratelimit")) return true;
-
-        return checkAndUpdateLimit(
-                lastSearchTime,
-                player.getName(),
-                configManager.getSearchCooldown() * 1000L
-        );
+        ConfigManager.Settings settings = configManager.getSettings();
+        if (!settings.isRateLimitEnabled()) return true;
+        if (permissionCache.get(player).isNoRateLimit()) return true;
+
+        return tryAcquire(player.getUniqueId(), SEARCH, settings.getSearchCooldown() * 1000L);
     }
 
     public boolean canTeleport(Player player) {
-        if (!configManager.isRateLimitEnabled()) return true;
-        if (player.hasPermission("locatecities.noratelimit")) return true;
-
-        return checkAndUpdateLimit(
-                lastTeleportTime,
-                player.getName(),
-                configManager.getTeleportCooldown() * 1000L
-        );
+        ConfigManager.Settings settings = configManager.getSettings();
+        if (!settings.isRateLimitEnabled()) return true;
+        if (permissionCache.get(player).isNoRateLimit()) return true;
+
+        return tryAcquire(player.getUniqueId(), TELEPORT, settings.getTeleportCooldown() * 1000L);
     }
 
-    private boolean checkAndUpdateLimit(ConcurrentMap<String, Long> timeMap,
-                                        String playerName, long cooldownMs) {
+    public int getRemainingSearchTime(Player player) {
+        ConfigManager.Settings settings = configManager.getSettings();
+        if (!settings.isRateLimitEnabled()) return 0;
+        if (permissionCache.get(player).isNoRateLimit()) return 0;
+
+        return getRemainingTime(player.getUniqueId(), SEARCH, settings.getSearchCooldown() * 1000L);
+    }
 
-        // Cleanup periodico automatico per prevenire memory leaks
+    public int getRemainingTeleportTime(Player player) {
+        ConfigManager.Settings settings = configManager.getSettings();
+        if (!settings.isRateLimitEnabled()) return 0;
+        if (permissionCache.get(player).isNoRateLimit()) return 0;
+
+        return getRemainingTime(player.getUniqueId(), TELEPORT, settings.getTeleportCooldown() * 1000L);
+    }
+
+    /**
+     * Registra l'azione se il cooldown è trascorso; un solo vincitore anche con chiamate concorrenti
+     */
+    private boolean tryAcquire(UUID playerId, int action, long cooldownMs) {
         long now = System.currentTimeMillis();
         if (now - lastCleanup.get() > CLEANUP_INTERVAL) {
-            cleanupExpiredEntries();
+            cleanupExpiredEntries(now);
         }
 
-        // Controllo limite massimo entry per sicurezza
-        if (timeMap.size() > MAX_ENTRIES) {
-            cleanupOldestEntries(timeMap);
+        AtomicLongArray times = lastActions.get(playerId);
+        if (times == null) {
+            AtomicLongArray created = new AtomicLongArray(2);
+            times = lastActions.putIfAbsent(playerId, created);
+            if (times == null) {
+                times = created;
+                expiryQueue.offer(new Expiry(playerId, now + ENTRY_TTL));
+            }
         }
 
-        String sanitizedName = sanitizePlayerName(playerName);
-
-        // *** CORREZIONE: Atomic check-and-update SINCRONIZZATO ***
-        synchronized (timeMap) {
-            Long lastTime = timeMap.get(sanitizedName);
-            if (lastTime == null || (now - lastTime) >= cooldownMs) {
-                timeMap.put(sanitizedName, now);
+        while (true) {
+            long last = times.get(action);
+            if (last != 0 && now - last < cooldownMs) {
+                return false;
+            }
+            if (times.compareAndSet(action, last, now)) {
                 return true;
             }
-            return false;
         }
     }
 
-    public int getRemainingSearchTime(Player player) {
-        if (!configManager.isRateLimitEnabled()) return 0;
-        if (player.hasPermission("locatecities.noratelimit")) return 0;
-
-        return getRemainingTime(
-                lastSearchTime,
-                player.getName(),
-                configManager.getSearchCooldown() * 1000L
-        );
-    }
-
-    public int getRemainingTeleportTime(Player player) {
-        if (!configManager.isRateLimitEnabled()) return 0;
-        if (player.hasPermission("locatecities.noratelimit")) return 0;
-
-        return getRemainingTime(
-                lastTeleportTime,
-                player.getName(),
-                configManager.getTeleportCooldown() * 1000L
-        );
-    }
-
-    private int getRemainingTime(ConcurrentMap<String, Long> timeMap,
-                                 String playerName, long cooldownMs) {
-
-        String sanitizedName = sanitizePlayerName(playerName);
-        Long lastTime = timeMap.get(sanitizedName);
-
-        if (lastTime == null) return 0;
+    private int getRemainingTime(UUID playerId, int action, long cooldownMs) {
+        AtomicLongArray times = lastActions.get(playerId);
+        if (times == null) return 0;
 
-        long now = System.currentTimeMillis();
-        long remaining = cooldownMs - (now - lastTime);
+        long last = times.get(action);
+        if (last == 0) return 0;
 
+        long remaining = cooldownMs - (System.currentTimeMillis() - last);
         return remaining > 0 ? (int) (remaining / 1000) : 0;
     }
 
     /**
-     * Cleanup ottimizzato che rimuove entry scadute
+     * Esamina solo le entry in scadenza: inattive da ENTRY_TTL vengono rimosse, le altre riaccodate
      */
-    private void cleanupExpiredEntries() {
-        long now = System.currentTimeMillis();
-
+    private void cleanupExpiredEntries(long now) {
+        long previous = lastCleanup.get();
         // Evita cleanup multipli simultanei
-        if (!lastCleanup.compareAndSet(lastCleanup.get(), now)) {
+        if (!lastCleanup.compareAndSet(previous, now)) {
             return;
         }
 
-        long expireTime = now - ENTRY_TTL;
+        Expiry head;
+        while ((head = expiryQueue.peek()) != null && head.expiresAt <= now) {
+            expiryQueue.poll();
 
-        // Cleanup in parallelo per performance
-        lastSearchTime.entrySet().removeIf(entry -> entry.getValue() < expireTime);
-        lastTeleportTime.entrySet().removeIf(entry -> entry.getValue() < expireTime);
-    }
-
-    /**
-     * Emergency cleanup quando si supera il limite massimo
-     */
-    private void cleanupOldestEntries(ConcurrentMap<String, Long> timeMap) {
-        if (timeMap.size() <= MAX_ENTRIES) return;
-
-        // Rimuovi il 20% delle entry più vecchie
-        int toRemove = MAX_ENTRIES / 5;
+            AtomicLongArray times = lastActions.get(head.playerId);
+            if (times == null) continue;
 
-        timeMap.entrySet().stream()
-                .sorted((e1, e2) -> Long.compare(e1.getValue(), e2.getValue()))
-                .limit(toRemove)
-                .map(entry -> entry.getKey())
-                .forEach(timeMap::remove);
+            long lastUsed = Math.max(times.get(SEARCH), times.get(TELEPORT));
+            if (now - lastUsed >= ENTRY_TTL) {
+                lastActions.remove(head.playerId, times);
+            } else {
+                // now + TTL mantiene la coda ordinata: la rimozione può solo ritardare, mai anticipare
+                expiryQueue.offer(new Expiry(head.playerId, now + ENTRY_TTL));
+            }
+        }
     }
 
     /**
      * Pulisce tutti i cooldown - mantiene API esistente
      */
     public void clearCooldowns() {
-        lastSearchTime.clear();
-        lastTeleportTime.clear();
+        lastActions.clear();
+        expiryQueue.clear();
         lastCleanup.set(System.currentTimeMillis());
     }
 
-    /**
-     * Sanitizzazione ottimizzata del nome giocatore
-     */
-    private String sanitizePlayerName(String playerName) {
-        if (playerName == null || playerName.trim().isEmpty()) {
-            throw new IllegalArgumentException("Player name cannot be null or empty");
-        }
-
-        String sanitized = playerName.trim().toLowerCase();
+    private static class Expiry {
+        final UUID playerId;
+        final long expiresAt;
 
-        if (sanitized.length() > 16) {
-            sanitized = sanitized.substring(0, 16);
+        Expiry(UUID playerId, long expiresAt) {
+            this.playerId = playerId;
+            this.expiresAt = expiresAt;
         }
-
-        // Validazione più veloce senza regex
-        StringBuilder sb = new StringBuilder(sanitized.length());
-        for (char c : sanitized.toCharArray()) {
-            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '-') {
-                sb.append(c);
-            }
-        }
-
-        String result = sb.toString();
-        if (result.isEmpty()) {
-            throw new IllegalArgumentException("Player name contains only invalid characters");
-        }
-
-        return result.intern(); // Ottimizza memoria per nomi ricorrenti
     }
 }
\ No newline at end of file
@@ -1,8 +1,11 @@
 package it.samuconfaa.locateCities.commands;
 
+import it.samuconfaa.locateCities.database.GazetteerImporter;
+import it.samuconfaa.locateCities.database.OfflineCityDatabase;
 import it.samuconfaa.locateCities.managers.CityManager;
 import it.samuconfaa.locateCities.LocateCities;
 import it.samuconfaa.locateCities.managers.StatisticsManager;
+import it.samuconfaa.locateCities.utils.SecurityUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.World;
@@ -11,16 +14,21 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 
 public class AdminCommand implements CommandExecutor {
 
     private final LocateCities plugin;
     private final CityManager cityManager;
     private final StatisticsManager statisticsManager;
+    private final AtomicBoolean gazetteerImportRunning = new AtomicBoolean(false);
 
     public AdminCommand(LocateCities plugin, CityManager cityManager, StatisticsManager statisticsManager) {
         this.plugin = plugin;
@@ -91,6 +99,10 @@ public class AdminCommand implements CommandExecutor {
                 handleSetWorld(sender, args);
                 break;
 
+            case "gazetteer":
+                handleGazetteerImport(sender, args);
+                break;
+
             // NUOVO: Comando per gestire permessi VIP
             case "vip":
                 handleVipManagement(sender, args);
@@ -127,6 +139,7 @@ public class AdminCommand implements CommandExecutor {
         sender.sendMessage(ChatColor.GOLD + "║" + ChatColor.AQUA + " /cittaadmin setworld <mondo>          " + ChatColor.GOLD + "║");
         sender.sendMessage(ChatColor.GOLD + "║" + ChatColor.AQUA + " /cittaadmin playerhistory <player>    " + ChatColor.GOLD + "║");
         sender.sendMessage(ChatColor.GOLD + "║" + ChatColor.AQUA + " /cittaadmin cleandb [giorni]          " + ChatColor.GOLD + "║");
+        sender.sendMessage(ChatColor.GOLD + "║" + ChatColor.AQUA + " /cittaadmin gazetteer <file> [pop.min] " + ChatColor.GOLD + "║");
         sender.sendMessage(ChatColor.GOLD + "╚═══════════════════════════════════════╝");
     }
 
@@ -189,6 +202,10 @@ public class AdminCommand implements CommandExecutor {
         sender.sendMessage(ChatColor.YELLOW + "   Cache hit rate: " + ChatColor.WHITE +
                 String.format("%.1f%%", statisticsManager.getCacheHitRate()));
         sender.sendMessage(ChatColor.YELLOW + "   Città in cache: " + ChatColor.WHITE + cityManager.getCacheSize());
+        sender.sendMessage(ChatColor.YELLOW + "   Cache: " + ChatColor.WHITE + cityManager.getCacheStats());
+        if (plugin.getChunkPrewarmer() != null) {
+            sender.sendMessage(ChatColor.YELLOW + "   Pre-warming: " + ChatColor.WHITE + plugin.getChunkPrewarmer().getStats());
+        }
 
         sender.sendMessage("");
 
@@ -222,9 +239,8 @@ public class AdminCommand implements CommandExecutor {
                 return;
             }
 
-            plugin.getConfig().set("lat_origin", lat);
-            plugin.getConfig().set("lon_origin", lon);
-            plugin.saveConfig();
+            plugin.getConfigManager().update(Map.of("lat_origin", lat, "lon_origin", lon));
+            cityManager.invalidateLandingSpots();
 
             sender.sendMessage(plugin.getConfigManager().getMessage("origin_set",
                     "lat", String.valueOf(lat),
@@ -250,8 +266,8 @@ public class AdminCommand implements CommandExecutor {
                 return;
             }
 
-            plugin.getConfig().set("scale", scale);
-            plugin.saveConfig();
+            plugin.getConfigManager().update(Map.of("scale", scale));
+            cityManager.invalidateLandingSpots();
 
             sender.sendMessage(plugin.getConfigManager().getMessage("scale_set",
                     "scale", String.valueOf(scale)));
@@ -325,7 +341,7 @@ public class AdminCommand implements CommandExecutor {
         String worldName = args[1].trim();
 
         // Validazione nome mondo
-        if (!worldName.matches("^[a-zA-Z0-9_-]{1,50}$")) {
+        if (!SecurityUtils.isValidWorldName(worldName)) {
             sender.sendMessage(ChatColor.RED + "Nome mondo non valido! Usa solo lettere, numeri, underscore e trattini.");
             return;
         }
@@ -342,8 +358,8 @@ public class AdminCommand implements CommandExecutor {
         }
 
         // Salva la configurazione
-        plugin.getConfig().set("target_world", worldName);
-        plugin.saveConfig();
+        plugin.getConfigManager().update(Map.of("target_world", worldName));
+        cityManager.invalidateLandingSpots();
 
         sender.sendMessage(ChatColor.GREEN + "✅ Mondo target impostato a: " + ChatColor.WHITE + worldName);
         sender.sendMessage(ChatColor.GRAY + "Tutti i futuri teletrasporti avverranno in questo mondo.");
@@ -360,7 +376,7 @@ public class AdminCommand implements CommandExecutor {
         }
 
         String cityName = args[1];
-        List<String> nearCities = statisticsManager.getNearCities(cityName, 10);
+        List<String> nearCities = cityManager.findSimilarCities(cityName, 10);
 
         sender.sendMessage(ChatColor.GOLD + "🔍 " + ChatColor.WHITE + "Città simili a '" +
                 ChatColor.AQUA + cityName + ChatColor.WHITE + "':");
@@ -431,14 +447,103 @@ public class AdminCommand implements CommandExecutor {
             }
         }
 
-        plugin.getDatabaseManager().clearOldTeleports(daysToKeep);
-        sender.sendMessage(ChatColor.GREEN + "🗑️ Database pulito! Eliminati i record più vecchi di " +
-                daysToKeep + " giorni.");
+        int finalDaysToKeep = daysToKeep;
+        sender.sendMessage(ChatColor.GRAY + "⏳ Pulizia database in corso...");
+
+        // La pulizia avviene sul writer dopo il commit dei record in coda
+        plugin.getDatabaseManager().clearOldTeleports(daysToKeep).whenComplete((deleted, throwable) ->
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (throwable != null) {
+                        sender.sendMessage(ChatColor.RED + "❌ Errore durante la pulizia del database: " +
+                                throwable.getMessage());
+                        return;
+                    }
+
+                    sender.sendMessage(ChatColor.GREEN + "🗑️ Database pulito! Eliminati " + deleted +
+                            " record più vecchi di " + finalDaysToKeep + " giorni.");
+                }));
+    }
+
+    private void handleGazetteerImport(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage(ChatColor.RED + "Uso: /cittaadmin gazetteer <file> [popolazione_minima]");
+            sender.sendMessage(ChatColor.GRAY + "Il file GeoNames (es. cities15000.txt) deve trovarsi nella cartella del plugin");
+            return;
+        }
+
+        // Solo file nella cartella del plugin
+        String fileName = args[1];
+        if (fileName.contains("/") || fileName.contains("\\") || fileName.contains("..")) {
+            sender.sendMessage(ChatColor.RED + "Nome file non valido!");
+            return;
+        }
+
+        File input = new File(plugin.getDataFolder(), fileName);
+        if (!input.isFile()) {
+            sender.sendMessage(ChatColor.RED + "File non trovato: " + fileName);
+            return;
+        }
+
+        int minPopulation = 0;
+        if (args.length >= 3) {
+            try {
+                minPopulation = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Popolazione minima non valida!");
+                return;
+            }
+        }
+
+        if (!gazetteerImportRunning.compareAndSet(false, true)) {
+            sender.sendMessage(ChatColor.RED + "Un import del gazetteer è già in corso!");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GRAY + "⏳ Import gazetteer da " + fileName + " in corso...");
+
+        // File nuovo: quello attuale è mappato in memoria e non va sovrascritto (su Windows fallirebbe)
+        File baseFile = new File(plugin.getDataFolder(), LocateCities.GAZETTEER_FILE);
+        File output = OfflineCityDatabase.nextGazetteerFile(baseFile);
+        GazetteerImporter importer = new GazetteerImporter(minPopulation, message -> {
+            plugin.getLogger().info("[Gazetteer] " + message);
+            plugin.getServer().getScheduler().runTask(plugin, () ->
+                    sender.sendMessage(ChatColor.GRAY + "   " + message));
+        });
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                GazetteerImporter.ImportResult result = importer.importFile(input, output);
+                try {
+                    OfflineCityDatabase.loadGazetteer(output);
+                } catch (IOException e) {
+                    // Non deve diventare la versione scelta al prossimo avvio
+                    output.delete();
+                    throw e;
+                }
+                cityManager.rebuildCompletionIndex();
+
+                // Il vecchio mapping viene rilasciato dal GC; se il file è ancora bloccato resta fino al riavvio
+                OfflineCityDatabase.deleteStaleGazetteers(baseFile, output);
+
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                        sender.sendMessage(ChatColor.GREEN + "✅ Gazetteer aggiornato: " + result.getEntries() +
+                                " nomi disponibili offline"));
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Errore durante l'import del gazetteer", e);
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                        sender.sendMessage(ChatColor.RED + "❌ Errore durante l'import: " + e.getMessage()));
+            } finally {
+                gazetteerImportRunning.set(false);
+            }
+        });
     }
 
     private void handleDatabaseStats(CommandSender sender) {
         sender.sendMessage(ChatColor.GOLD + "📊 " + ChatColor.WHITE + "STATISTICHE DATABASE:");
         sender.sendMessage(ChatColor.YELLOW + "   Database: " + ChatColor.WHITE + "SQLite (teleports.db)");
+        sender.sendMessage(ChatColor.YELLOW + "   Stato: " + ChatColor.WHITE + plugin.getDatabaseManager().getDatabaseStats());
+        sender.sendMessage(ChatColor.YELLOW + "   Indice: " + ChatColor.WHITE + plugin.getDatabaseManager().getCooldownIndexStats());
+        sender.sendMessage(ChatColor.YELLOW + "   Scritture: " + ChatColor.WHITE + plugin.getDatabaseManager().getWriterStats());
 
         if (plugin.getConfigManager().isVipTeleportSystemEnabled()) {
             sender.sendMessage(ChatColor.YELLOW + "   Sistema VIP: " + ChatColor.GREEN + "✅ Attivo");
@@ -1,30 +1,61 @@
 package it.samuconfaa.locateCities.commands;
 
+import it.samuconfaa.locateCities.managers.CityManager;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
-public class AdminTabCompleter implements TabCompleter {
+public class AdminTabCompleter implements TabCompleter, Listener {
 
     // Sottcomandi admin disponibili
     private static final List<String> ADMIN_SUBCOMMANDS = Arrays.asList(
             "reload", "clearcache", "info", "setorigin", "setscale",
-            "stats", "near", "playerhistory", "cleandb", "dbstats", "bypass", "setworld"
+            "stats", "near", "playerhistory", "cleandb", "dbstats", "bypass", "setworld", "gazetteer"
     );
 
-    // Città popolari per il comando near
-    private static final List<String> POPULAR_CITIES = Arrays.asList(
-            "Roma", "Milano", "Napoli", "Torino", "Palermo", "Genova", "Bologna",
-            "Firenze", "Bari", "Catania", "Venezia", "Verona", "Messina", "Padova",
-            "Londra", "Parigi", "Madrid", "Berlino", "Amsterdam", "New York", "Tokyo"
-    );
+    private static final int MAX_CITY_SUGGESTIONS = 20;
+
+    private final CityManager cityManager;
+
+    // Nomi dei mondi aggiornati sul main thread: il completamento può girare in async (Paper)
+    private volatile List<String> worldNames;
+
+    public AdminTabCompleter(CityManager cityManager) {
+        this.cityManager = cityManager;
+        this.worldNames = Bukkit.getWorlds().stream()
+                .map(World::getName)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        refreshWorldNames(null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        // Durante l'evento il mondo è ancora nella lista del server
+        refreshWorldNames(event.getWorld().getName());
+    }
+
+    private void refreshWorldNames(String unloading) {
+        worldNames = Bukkit.getWorlds().stream()
+                .map(World::getName)
+                .filter(name -> !name.equals(unloading))
+                .collect(Collectors.toUnmodifiableList());
+    }
 
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
@@ -50,8 +81,7 @@ public class AdminTabCompleter implements TabCompleter {
                 case "setworld":
                     // Suggerimenti nomi dei mondi
                     String partials = args[1].toLowerCase();
-                    completions = Bukkit.getWorlds().stream()
-                            .map(World::getName)
+                    completions = worldNames.stream()
                             .filter(name -> name.toLowerCase().startsWith(partials))
                             .collect(Collectors.toList());
                     break;
@@ -63,10 +93,7 @@ public class AdminTabCompleter implements TabCompleter {
 
                 case "near":
                     // Suggerimenti città per comando near
-                    String partial = args[1].toLowerCase();
-                    completions = POPULAR_CITIES.stream()
-                            .filter(city -> city.toLowerCase().startsWith(partial))
-                            .collect(Collectors.toList());
+                    completions = cityManager.completeCityName(args[1], MAX_CITY_SUGGESTIONS);
                     break;
 
                 case "playerhistory":
@@ -103,10 +130,7 @@ public class AdminTabCompleter implements TabCompleter {
 
                 case "bypass":
                     // Suggerimenti città per bypass
-                    String partial = args[2].toLowerCase();
-                    completions = POPULAR_CITIES.stream()
-                            .filter(city -> city.toLowerCase().startsWith(partial))
-                            .collect(Collectors.toList());
+                    completions = cityManager.completeCityName(args[2], MAX_CITY_SUGGESTIONS);
                     break;
             }
         }
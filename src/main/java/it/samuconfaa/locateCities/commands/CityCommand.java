@@ -7,6 +7,7 @@ import it.samuconfaa.locateCities.managers.CityManager;
 import it.samuconfaa.locateCities.managers.EconomyManager;
 import it.samuconfaa.locateCities.managers.StatisticsManager;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -15,10 +16,15 @@ import org.bukkit.entity.Player;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class CityCommand implements CommandExecutor {
 
+    // teleportAsync esiste solo su Paper
+    private static final boolean ASYNC_TELEPORT = detectAsyncTeleport();
+
     private final LocateCities plugin;
     private final CityManager cityManager;
     private final EconomyManager economyManager;
@@ -87,7 +93,7 @@ public class CityCommand implements CommandExecutor {
         // Mostra info VIP se il sistema è abilitato
         if (plugin.getConfigManager().isVipTeleportSystemEnabled() && sender instanceof Player) {
             Player player = (Player) sender;
-            if (!player.hasPermission(plugin.getConfigManager().getVipTeleportPermission())) {
+            if (!plugin.getPermissionCache().get(player).hasVipPermission()) {
                 sender.sendMessage("§6╠══════════════════════════════════════╣");
                 sender.sendMessage("§6║§c  🔒 TELETRASPORTO RISERVATO VIP 🔒   §6║");
                 sender.sendMessage("§6║§7 Teletrasporto riservato ai possessori del PASS MENSILE+║");
@@ -101,15 +107,8 @@ public class CityCommand implements CommandExecutor {
      * Verifica se un giocatore può usare il teletrasporto
      */
     private boolean canPlayerUseTeleport(Player player) {
-        // Se il sistema VIP è disabilitato, tutti possono teletrasportarsi (comportamento originale)
-        if (!plugin.getConfigManager().isVipTeleportSystemEnabled()) {
-            return player.hasPermission("locatecities.teleport");
-        }
-
-        // Se il sistema VIP è abilitato, controlla il permesso specifico
-        return player.hasPermission(plugin.getConfigManager().getVipTeleportPermission()) ||
-                player.hasPermission("locatecities.admin") ||
-                player.hasPermission("locatecities.free");
+        // Sistema VIP attivo: permesso VIP, admin o free; altrimenti locatecities.teleport
+        return plugin.getPermissionCache().get(player).canTeleport();
     }
 
     private boolean handleSearch(CommandSender sender, String[] args) {
@@ -147,7 +146,7 @@ public class CityCommand implements CommandExecutor {
             }
         } else {
             // Controllo permesso standard se il sistema VIP è disabilitato
-            if (!player.hasPermission("locatecities.teleport")) {
+            if (!plugin.getPermissionCache().get(player).hasTeleportPermission()) {
                 player.sendMessage(plugin.getConfigManager().getMessage("no_permission_teleport"));
                 return true;
             }
@@ -240,16 +239,6 @@ public class CityCommand implements CommandExecutor {
                 }
             }
 
-            // Controllo economy
-            if (economyManager.isEconomyEnabled()) {
-                double searchCost = economyManager.getSearchCost();
-                if (!economyManager.hasEnoughMoney(player, searchCost)) {
-                    player.sendMessage(plugin.getConfigManager().getMessage("insufficient_funds",
-                            "cost", economyManager.formatMoney(searchCost)));
-                    return true;
-                }
-            }
-
             // Controlli specifici per teleport
             if (teleport) {
                 // *** CORREZIONE 2: Controllo sistema VIP PRIMA dell'async ***
@@ -260,7 +249,7 @@ public class CityCommand implements CommandExecutor {
                         return true;
                     }
                 } else {
-                    if (!player.hasPermission("locatecities.teleport")) {
+                    if (!plugin.getPermissionCache().get(player).hasTeleportPermission()) {
                         player.sendMessage(plugin.getConfigManager().getMessage("no_permission_teleport"));
                         return true;
                     }
@@ -272,30 +261,61 @@ public class CityCommand implements CommandExecutor {
                     return true;
                 }
 
-                // *** CORREZIONE 3: Controllo cooldown VIP PRIMA dell'async ***
+                // *** CORREZIONE 3: Controllo cooldown VIP PRIMA della ricerca, fuori dal main thread ***
                 if (plugin.getConfigManager().isVipTeleportSystemEnabled() &&
                         canPlayerUseTeleport(player) &&
-                        !player.hasPermission("locatecities.free")) {
+                        !plugin.getPermissionCache().get(player).isFree()) {
 
                     int cooldownDays = plugin.getConfigManager().getVipTeleportCooldownDays();
-                    if (!databaseManager.canTeleport(player.getName(), cooldownDays)) {
-                        int remainingDays = databaseManager.getRemainingDays(player.getName(), cooldownDays);
-
-                        LocalDate lastTeleport = databaseManager.getLastTeleportDate(player.getName());
-                        String lastCity = databaseManager.getLastTeleportCity(player.getName());
-                        String lastDateStr = lastTeleport != null ?
-                                lastTeleport.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) : "Mai";
-
-                        player.sendMessage(plugin.getConfigManager().getMessage("vip_teleport_cooldown",
-                                "days", String.valueOf(remainingDays),
-                                "last_city", lastCity != null ? lastCity : "Sconosciuta",
-                                "last_date", lastDateStr));
-                        return true;
-                    }
+                    databaseManager.getCooldownStatusAsync(player.getName(), cooldownDays)
+                            .whenComplete((status, throwable) -> {
+                                // Torna al main thread solo per i messaggi e la ricerca
+                                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                                    if (!player.isOnline()) return;
+
+                                    if (throwable == null && !status.isAllowed()) {
+                                        sendCooldownMessage(player, status);
+                                        return;
+                                    }
+
+                                    startCitySearch(sender, player, cityName, true);
+                                });
+                            });
+                    return true;
                 }
             }
         }
 
+        startCitySearch(sender, player, cityName, teleport);
+        return true;
+    }
+
+    private void sendCooldownMessage(Player player, DatabaseManager.CooldownStatus status) {
+        LocalDate lastTeleport = status.getLastTeleportDate();
+        String lastCity = status.getLastTeleportCity();
+        String lastDateStr = lastTeleport != null ?
+                lastTeleport.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) : "Mai";
+
+        player.sendMessage(plugin.getConfigManager().getMessage("vip_teleport_cooldown",
+                "days", String.valueOf(status.getRemainingDays()),
+                "last_city", lastCity != null ? lastCity : "Sconosciuta",
+                "last_date", lastDateStr));
+    }
+
+    private void startCitySearch(CommandSender sender, Player player, String cityName, boolean teleport) {
+        // Il costo della ricerca resta prenotato finché la ricerca non si conclude
+        EconomyManager.Reservation searchReservation = EconomyManager.Reservation.NONE;
+        if (player != null) {
+            double searchCost = economyManager.getSearchCost();
+            searchReservation = economyManager.reserve(player, searchCost, "City search");
+            if (searchReservation == null) {
+                player.sendMessage(plugin.getConfigManager().getMessage("insufficient_funds",
+                        "cost", economyManager.formatMoney(searchCost)));
+                return;
+            }
+        }
+        EconomyManager.Reservation reservation = searchReservation;
+
         // Messaggio di ricerca
         sender.sendMessage(plugin.getConfigManager().getMessage("searching", "city", cityName));
 
@@ -314,18 +334,28 @@ public class CityCommand implements CommandExecutor {
             // Torna al main thread per sicurezza
             plugin.getServer().getScheduler().runTask(plugin, () -> {
                 if (throwable != null) {
+                    economyManager.release(reservation);
                     sender.sendMessage(plugin.getConfigManager().getMessage("error_general",
                             "error", throwable.getMessage()));
+
+                    // Probabile errore di battitura: proponi i nomi più vicini già noti
+                    List<String> suggestions = cityManager.findSimilarCities(cityName, 3);
+                    if (!suggestions.isEmpty()) {
+                        sender.sendMessage(plugin.getConfigManager().getMessage("did_you_mean",
+                                "suggestions", String.join(", ", suggestions)));
+                    }
                     return;
                 }
 
-                // Addebita il costo della ricerca
-                if (player != null && economyManager.isEconomyEnabled()) {
-                    double searchCost = economyManager.getSearchCost();
-                    if (economyManager.chargeMoney(player, searchCost, "City search")) {
-                        player.sendMessage(plugin.getConfigManager().getMessage("economy_charged",
-                                "cost", economyManager.formatMoney(searchCost)));
-                    }
+                // Addebita il costo della ricerca: senza addebito niente risultato
+                if (!economyManager.capture(reservation)) {
+                    sender.sendMessage(plugin.getConfigManager().getMessage("insufficient_funds",
+                            "cost", economyManager.formatMoney(reservation.getAmount())));
+                    return;
+                }
+                if (reservation.getAmount() > 0) {
+                    player.sendMessage(plugin.getConfigManager().getMessage("economy_charged",
+                            "cost", economyManager.formatMoney(reservation.getAmount())));
                 }
 
                 CityData.MinecraftCoordinates coords = cityData.toMinecraftCoordinates(cityManager.configManager);
@@ -352,115 +382,111 @@ public class CityCommand implements CommandExecutor {
                 }
             });
         });
-
-        return true;
     }
 
     private void handleTeleportExecution(Player player, CityData cityData, CityData.MinecraftCoordinates coords) {
         Location playerLocation = player.getLocation();
 
-        // Ottieni la location nel mondo di destinazione configurato
-        Location cityLocation = cityManager.getMinecraftLocation(cityData, player);
+        // Mondo di destinazione configurato
+        World targetWorld = cityManager.getTargetWorld(player);
 
         // Verifica che il mondo di destinazione esista
-        if (cityLocation.getWorld() == null) {
+        if (targetWorld == null) {
             String targetWorldName = plugin.getConfigManager().getTargetWorldName();
             player.sendMessage(plugin.getConfigManager().getMessage("world_not_found", "world", targetWorldName));
             return;
         }
 
-        // Calcola distanza usando le coordinate del mondo del giocatore per il calcolo del costo
-        // ma mantieni il teletrasporto verso il mondo di destinazione
-        Location virtualCityLocationInPlayerWorld = cityManager.getMinecraftLocationInWorld(cityData, player.getWorld());
+        // Distanza orizzontale nel mondo del giocatore per il calcolo del costo:
+        // nessuna lettura del terreno, il punto di atterraggio serve solo per il teleport
+        CityData.MinecraftCoordinates projected = cityManager.projectCity(cityData);
+        Location virtualCityLocationInPlayerWorld = new Location(player.getWorld(),
+                projected.getX(), playerLocation.getY(), projected.getZ());
         double distance = playerLocation.distance(virtualCityLocationInPlayerWorld);
         boolean isFree = distance <= economyManager.getFreeDistance();
 
         // Calcola il costo del teleport (semplificato, senza opzione bypass pagamento)
         double teleportCost = calculateTeleportCost(player, distance, isFree);
 
-        // Controllo economy per teleport (se non è gratuito)
-        if (teleportCost > 0 && economyManager.isEconomyEnabled()) {
-            if (!economyManager.hasEnoughMoney(player, teleportCost)) {
-                player.sendMessage(plugin.getConfigManager().getMessage("insufficient_funds",
-                        "cost", economyManager.formatMoney(teleportCost)));
+        // Prenotato prima del caricamento del chunk: il denaro non può essere speso altrove nel frattempo
+        EconomyManager.Reservation reservation = economyManager.reserve(player, teleportCost, "City teleport");
+        if (reservation == null) {
+            player.sendMessage(plugin.getConfigManager().getMessage("insufficient_funds",
+                    "cost", economyManager.formatMoney(teleportCost)));
+            return;
+        }
+
+        // Punto sicuro dalla cache o dal chunk caricato in modo asincrono, poi il teleport
+        cityManager.resolveLanding(cityData, targetWorld).whenComplete((cityLocation, throwable) -> {
+            if (!player.isOnline()) {
+                economyManager.release(reservation);
                 return;
             }
 
-            if (economyManager.chargeMoney(player, teleportCost, "City teleport")) {
-                player.sendMessage(plugin.getConfigManager().getMessage("teleport_charged",
-                        "cost", economyManager.formatMoney(teleportCost)));
+            if (throwable != null) {
+                economyManager.release(reservation);
+                plugin.getLogger().warning("Errore nel calcolo del punto di atterraggio: " + throwable.getMessage());
+                handleTeleportFailure(player, cityData);
+                return;
             }
-        } else if (isFree && teleportCost == 0) {
-            player.sendMessage(plugin.getConfigManager().getMessage("free_teleport",
-                    "distance", String.valueOf((int) distance)));
-        }
 
-        // Esegui il teletrasporto al mondo di destinazione
-        try {
-            // Per teletrasporti cross-world, usiamo un approccio asincrono più sicuro
-            boolean isDifferentWorld = !player.getWorld().equals(cityLocation.getWorld());
-
-            if (isDifferentWorld) {
-                // Teletrasporto cross-world: usa scheduler per evitare problemi
-                plugin.getServer().getScheduler().runTask(plugin, () -> {
-                    try {
-                        player.teleport(cityLocation);
-
-                        // Verifica che il teletrasporto sia avvenuto (controllo sicuro per cross-world)
-                        plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
-                            try {
-                                Location currentLocation = player.getLocation();
-
-                                // Per cross-world, verifica solo se il giocatore è nel mondo corretto
-                                // e le coordinate sono ragionevolmente vicine
-                                boolean teleportSuccess = false;
-
-                                if (currentLocation.getWorld().equals(cityLocation.getWorld())) {
-                                    // Stesso mondo: calcola distanza normale
-                                    double teleportDistance = currentLocation.distance(cityLocation);
-                                    teleportSuccess = teleportDistance < 10.0; // Entro 10 blocchi
-                                } else {
-                                    // Mondi diversi: considera fallito
-                                    teleportSuccess = false;
-                                }
-
-                                if (teleportSuccess || currentLocation.getWorld().equals(cityLocation.getWorld())) {
-                                    // Se è nel mondo giusto, considera comunque riuscito
-                                    handleTeleportSuccess(player, cityData, cityLocation);
-                                } else {
-                                    handleTeleportFailure(player, cityData);
-                                }
-
-                            } catch (Exception e) {
-                                // In caso di errore nel controllo, assume successo se il mondo è corretto
-                                plugin.getLogger().warning("Errore nel controllo post-teletrasporto: " + e.getMessage());
-                                if (player.getLocation().getWorld().equals(cityLocation.getWorld())) {
-                                    handleTeleportSuccess(player, cityData, cityLocation);
-                                } else {
-                                    handleTeleportFailure(player, cityData);
-                                }
-                            }
-                        }, 10L); // Controlla dopo 0.5 secondi
-
-                    } catch (Exception e) {
-                        plugin.getLogger().warning("Errore durante teletrasporto cross-world: " + e.getMessage());
-                        handleTeleportFailure(player, cityData);
-                    }
-                });
-            } else {
-                // Teletrasporto nello stesso mondo
-                boolean teleportSuccess = player.teleport(cityLocation);
+            executeTeleport(player, cityData, cityLocation, distance, isFree, reservation);
+        });
+    }
 
-                if (teleportSuccess) {
-                    handleTeleportSuccess(player, cityData, cityLocation);
-                } else {
-                    handleTeleportFailure(player, cityData);
+    private void executeTeleport(Player player, CityData cityData, Location cityLocation,
+                                 double distance, boolean isFree, EconomyManager.Reservation reservation) {
+        // Addebito confermato prima di partire: una prenotazione scaduta va riaddebitata o il teleport non parte
+        if (!economyManager.capture(reservation)) {
+            player.sendMessage(plugin.getConfigManager().getMessage("insufficient_funds",
+                    "cost", economyManager.formatMoney(reservation.getAmount())));
+            return;
+        }
+
+        // Storico e statistiche solo a teletrasporto confermato; se fallisce l'importo viene rimborsato
+        teleport(player, cityLocation).whenComplete((success, throwable) -> {
+            if (throwable != null || !Boolean.TRUE.equals(success)) {
+                economyManager.release(reservation);
+                if (throwable != null) {
+                    plugin.getLogger().warning("Errore durante il teletrasporto: " + throwable.getMessage());
                 }
+                handleTeleportFailure(player, cityData);
+                return;
             }
 
+            if (reservation.getAmount() > 0) {
+                player.sendMessage(plugin.getConfigManager().getMessage("teleport_charged",
+                        "cost", economyManager.formatMoney(reservation.getAmount())));
+            } else if (isFree && reservation.getAmount() == 0) {
+                player.sendMessage(plugin.getConfigManager().getMessage("free_teleport",
+                        "distance", String.valueOf((int) distance)));
+            }
+
+            handleTeleportSuccess(player, cityData, cityLocation);
+        });
+    }
+
+    /**
+     * Teletrasporto con esito: su Paper teleportAsync (chunk caricati fuori dal main thread,
+     * future completato sul main thread), altrove teleport sincrono
+     */
+    private static CompletableFuture<Boolean> teleport(Player player, Location location) {
+        try {
+            if (ASYNC_TELEPORT) {
+                return player.teleportAsync(location);
+            }
+            return CompletableFuture.completedFuture(player.teleport(location));
         } catch (Exception e) {
-            plugin.getLogger().severe("Errore critico durante il teletrasporto: " + e.getMessage());
-            handleTeleportFailure(player, cityData);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static boolean detectAsyncTeleport() {
+        try {
+            Player.class.getMethod("teleportAsync", Location.class);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
         }
     }
 
@@ -495,7 +521,7 @@ public class CityCommand implements CommandExecutor {
 
     private double calculateTeleportCost(Player player, double distance, boolean isFree) {
         // Se ha il permesso gratuito o è entro la distanza gratuita
-        if (player.hasPermission("locatecities.free") || isFree) {
+        if (plugin.getPermissionCache().get(player).isFree() || isFree) {
             return 0.0;
         }
 
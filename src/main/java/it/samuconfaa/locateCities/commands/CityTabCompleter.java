@@ -1,5 +1,6 @@
 package it.samuconfaa.locateCities.commands;
 
+import it.samuconfaa.locateCities.managers.CityManager;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
@@ -10,27 +11,19 @@ import java.util.stream.Collectors;
 
 public class CityTabCompleter implements TabCompleter {
 
-    // Città più popolari per suggerimenti
-    private static final List<String> POPULAR_CITIES = Arrays.asList(
-            // Italia
-            "Roma", "Milano", "Napoli", "Torino", "Palermo", "Genova", "Bologna",
-            "Firenze", "Bari", "Catania", "Venezia", "Verona", "Messina", "Padova",
-            "Trieste", "Brescia", "Taranto", "Prato", "Parma", "Reggio Calabria",
-
-            // Mondo
-            "Londra", "Parigi", "Madrid", "Berlino", "Amsterdam", "Bruxelles",
-            "Vienna", "Praga", "Budapest", "Varsavia", "Stoccolma", "Oslo",
-            "New York", "Los Angeles", "Chicago", "Miami", "Toronto", "Vancouver",
-            "Tokyo", "Osaka", "Seoul", "Shanghai", "Pechino", "Mumbai", "Delhi",
-            "Sydney", "Melbourne", "Auckland", "San Paolo", "Rio de Janeiro",
-            "Buenos Aires", "Città del Messico", "Il Cairo", "Dubai", "Istanbul"
-    );
+    private static final int MAX_CITY_SUGGESTIONS = 20;
 
     // Sottcomandi disponibili
     private static final List<String> SUBCOMMANDS = Arrays.asList(
             "search", "tp", "teleport", "history", "tutorial"
     );
 
+    private final CityManager cityManager;
+
+    public CityTabCompleter(CityManager cityManager) {
+        this.cityManager = cityManager;
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         List<String> completions = new ArrayList<>();
@@ -47,10 +40,7 @@ public class CityTabCompleter implements TabCompleter {
 
             // Solo per search, tp e teleport mostriamo suggerimenti città
             if (subCommand.equals("search") || subCommand.equals("tp") || subCommand.equals("teleport")) {
-                String partial = args[1].toLowerCase();
-                completions = POPULAR_CITIES.stream()
-                        .filter(city -> city.toLowerCase().startsWith(partial))
-                        .collect(Collectors.toList());
+                completions = cityManager.completeCityName(args[1], MAX_CITY_SUGGESTIONS);
             }
         }
 
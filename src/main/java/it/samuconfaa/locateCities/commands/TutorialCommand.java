@@ -35,14 +35,7 @@ public class TutorialCommand implements CommandExecutor {
         player.sendMessage("");
 
         // Controlla se il giocatore ha accesso VIP
-        boolean hasVipAccess = false;
-        if (plugin.getConfigManager().isVipTeleportSystemEnabled()) {
-            hasVipAccess = player.hasPermission(plugin.getConfigManager().getVipTeleportPermission()) ||
-                    player.hasPermission("locatecities.admin") ||
-                    player.hasPermission("locatecities.free");
-        } else {
-            hasVipAccess = player.hasPermission("locatecities.teleport");
-        }
+        boolean hasVipAccess = plugin.getPermissionCache().get(player).canTeleport();
 
         boolean finalHasVipAccess = hasVipAccess;
         new BukkitRunnable() {
@@ -45,9 +45,14 @@ public class CityData {
     }
 
     public MinecraftCoordinates toMinecraftCoordinates(ConfigManager config) {
-        double latOrigin = config.getLatOrigin();
-        double lonOrigin = config.getLonOrigin();
-        double scale = config.getScale();
+        // Un solo snapshot: origine e scala arrivano sempre dallo stesso config
+        return toMinecraftCoordinates(config.getSettings());
+    }
+
+    public MinecraftCoordinates toMinecraftCoordinates(ConfigManager.Settings settings) {
+        double latOrigin = settings.getLatOrigin();
+        double lonOrigin = settings.getLonOrigin();
+        double scale = settings.getScale();
 
         // Conversione coordinate reali -> Minecraft
         // Calcolo base
@@ -57,7 +62,7 @@ public class CityData {
         int x = (int) Math.round(deltaLon * scale);
         int z = (int) Math.round(deltaLat * scale);
 
-        return new MinecraftCoordinates(x, z, config.getDefaultY());
+        return new MinecraftCoordinates(x, z, settings.getDefaultY());
     }
 
     public static class MinecraftCoordinates {
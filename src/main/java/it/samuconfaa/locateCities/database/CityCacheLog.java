@@ -0,0 +1,225 @@
+package it.samuconfaa.locateCities.database;
+
+import it.samuconfaa.locateCities.data.CityData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Log binario append-only della cache geocoding.
+ *
+ * Formato: header (magic + versione) seguito da record
+ * [lunghezza payload][payload][CRC32 del payload], dove il payload contiene
+ * chiave, nome, latitudine, longitudine e timestamp.
+ * Un record incompleto o corrotto in coda (es. crash durante la scrittura)
+ * viene scartato e il file troncato all'ultimo record valido.
+ */
+public class CityCacheLog {
+
+    private static final int MAGIC = 0x4C434331; // "LCC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD_SIZE = 4096;
+    private static final int MAX_STRING_BYTES = 1024;
+
+    private final File file;
+    private final Logger logger;
+
+    // Record presenti nel file (inclusi duplicati e scaduti), usato per decidere la compattazione
+    private int recordCount = 0;
+
+    public CityCacheLog(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getFileSize() {
+        return file.length();
+    }
+
+    /**
+     * Legge il log tramite FileChannel e restituisce l'ultima versione di ogni chiave
+     * con timestamp >= minTimestamp, in ordine di scrittura.
+     */
+    public synchronized Map<String, CityData> load(long minTimestamp) throws IOException {
+        Map<String, CityData> entries = new LinkedHashMap<>();
+        recordCount = 0;
+
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return entries;
+        }
+
+        long validEnd;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Lettura in un'unica operazione NIO (niente mmap: su Windows bloccherebbe truncate e rename)
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // continua a leggere
+            }
+            buffer.flip();
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Formato cache non riconosciuto: " + file.getName());
+            }
+
+            CRC32 crc = new CRC32();
+            validEnd = buffer.position();
+
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length <= 0 || length > MAX_PAYLOAD_SIZE || buffer.remaining() < length + 4) {
+                    break;
+                }
+
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                int storedCrc = buffer.getInt();
+
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != storedCrc) {
+                    break;
+                }
+
+                validEnd = buffer.position();
+                recordCount++;
+
+                String key = readString(payload);
+                String name = readString(payload);
+                double lat = payload.getDouble();
+                double lon = payload.getDouble();
+                long timestamp = payload.getLong();
+
+                // L'ultima scrittura vince: rimuove prima per mantenere l'ordine di inserimento
+                entries.remove(key);
+                if (timestamp >= minTimestamp) {
+                    entries.put(key, new CityData(name, lat, lon, timestamp));
+                }
+            }
+
+            if (validEnd < channel.size()) {
+                logger.warning("Cache log troncato a " + validEnd + " byte (record finale incompleto o corrotto)");
+                channel.truncate(validEnd);
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Aggiunge i record in coda al file senza riscriverlo
+     */
+    public synchronized void append(Map<String, CityData> entries) throws IOException {
+        if (entries.isEmpty()) return;
+
+        boolean newFile = !file.exists() || file.length() < HEADER_SIZE;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+
+            ByteBuffer buffer = encode(entries, newFile);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        recordCount += entries.size();
+    }
+
+    /**
+     * Riscrive il log con le sole entry vive, tramite file temporaneo e rename atomico
+     */
+    public synchronized void compact(Map<String, CityData> liveEntries) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer buffer = encode(liveEntries, true);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        recordCount = liveEntries.size();
+    }
+
+    private ByteBuffer encode(Map<String, CityData> entries, boolean withHeader) {
+        byte[][] keys = new byte[entries.size()][];
+        byte[][] names = new byte[entries.size()][];
+        int total = withHeader ? HEADER_SIZE : 0;
+
+        int i = 0;
+        for (Map.Entry<String, CityData> entry : entries.entrySet()) {
+            keys[i] = truncate(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            names[i] = truncate(entry.getValue().getName().getBytes(StandardCharsets.UTF_8));
+            total += 4 + payloadSize(keys[i], names[i]) + 4;
+            i++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        if (withHeader) {
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }
+
+        CRC32 crc = new CRC32();
+        i = 0;
+        for (CityData cityData : entries.values()) {
+            int length = payloadSize(keys[i], names[i]);
+            buffer.putInt(length);
+
+            int payloadStart = buffer.position();
+            buffer.putShort((short) keys[i].length).put(keys[i]);
+            buffer.putShort((short) names[i].length).put(names[i]);
+            buffer.putDouble(cityData.getLatitude());
+            buffer.putDouble(cityData.getLongitude());
+            buffer.putLong(cityData.getTimestamp());
+
+            crc.reset();
+            crc.update(buffer.array(), payloadStart, length);
+            buffer.putInt((int) crc.getValue());
+            i++;
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int payloadSize(byte[] key, byte[] name) {
+        return 2 + key.length + 2 + name.length + 8 + 8 + 8;
+    }
+
+    private static byte[] truncate(byte[] bytes) {
+        if (bytes.length <= MAX_STRING_BYTES) return bytes;
+        byte[] truncated = new byte[MAX_STRING_BYTES];
+        System.arraycopy(bytes, 0, truncated, 0, MAX_STRING_BYTES);
+        return truncated;
+    }
+
+    private static String readString(ByteBuffer payload) {
+        int length = Short.toUnsignedInt(payload.getShort());
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -5,11 +5,14 @@ import it.samuconfaa.locateCities.LocateCities;
 import java.io.File;
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -17,56 +20,109 @@ import java.util.regex.Pattern;
 public class DatabaseManager {
 
     private final LocateCities plugin;
-    private Connection connection;
     private final File dbFile;
     private final Logger logger;
-    private final ReentrantReadWriteLock dbLock = new ReentrantReadWriteLock();
+
+    // Unico writer: SQLite in WAL ammette un solo scrittore alla volta.
+    // La connessione è usata esclusivamente dal thread writer.
+    private PooledConnection writeConnection;
 
     // Pattern per validazione sicura
     private static final Pattern SAFE_PLAYER_NAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_-]{1,16}$");
     private static final Pattern SAFE_CITY_NAME_PATTERN = Pattern.compile("^[a-zA-ZÀ-ÿ0-9\\s\\-'.,]{1,50}$");
 
-    // Connessione pool simulato per SQLite
-    private final BlockingQueue<Connection> connectionPool;
-    private final AtomicInteger activeConnections = new AtomicInteger(0);
-    private static final int MAX_POOL_SIZE = 3;
-
-    // Batch operations per performance
-    private final BlockingQueue<TeleportRecord> pendingInserts;
-    private final ScheduledExecutorService batchProcessor;
+    // Pool di connessioni in sola lettura: i lettori WAL lavorano in parallelo al writer
+    private final BlockingQueue<PooledConnection> readPool;
+    private final int readPoolSize;
+    private final AtomicInteger activeReaders = new AtomicInteger(0);
+    private static final long BORROW_TIMEOUT_MS = 5000;
+
+    // SQL delle query (preparate una volta per connessione)
+    private static final String SQL_SELECT_LAST_TELEPORT = """
+            SELECT city_name, teleport_date FROM player_teleports 
+            WHERE player_name = ? ORDER BY teleport_date DESC LIMIT 1
+            """;
+    private static final String SQL_SELECT_PLAYER_TELEPORTS = """
+            SELECT city_name, MAX(teleport_date) as last_teleport 
+            FROM player_teleports WHERE player_name = ? 
+            GROUP BY city_name ORDER BY last_teleport DESC
+            """;
+    private static final String SQL_INSERT_TELEPORT = """
+            INSERT OR REPLACE INTO player_teleports (player_name, city_name, teleport_date) 
+            VALUES (?, ?, ?)
+            """;
+    private static final String SQL_DELETE_OLD = """
+            DELETE FROM player_teleports WHERE teleport_date < ?
+            """;
+
+    // Pipeline di scrittura: coda limitata consumata da un unico thread writer (group commit)
+    private final BlockingQueue<WriteOp> writeQueue;
+    private final Thread writerThread;
+    private final int batchSize;
+    private final long batchTimeoutNanos;
+    private static final int MAX_PENDING_WRITES = 4096;
+    // Attesa massima per un posto in coda delle barriere (chi le invia ne attende comunque l'esito)
+    private static final long BARRIER_OFFER_TIMEOUT_MS = 5_000;
+    // Record arrivati con la coda piena: il main thread non attende, il writer li svuota al giro successivo
+    private final ConcurrentLinkedQueue<TeleportRecord> overflowRecords = new ConcurrentLinkedQueue<>();
+    // Sveglia il writer fermo su take() dopo un trabocco
+    private static final WriteOp OVERFLOW_SIGNAL = new WriteOp() {};
+
+    // Ultimo record non ancora committato per giocatore (visibile ai lettori prima del commit)
+    private final ConcurrentHashMap<String, TeleportRecord> uncommittedRecords = new ConcurrentHashMap<>();
+
+    // Metriche writer
     private final AtomicInteger batchedOperations = new AtomicInteger(0);
-
-    // Prepared statements cache
-    private Map<String, PreparedStatement> statementCache = new ConcurrentHashMap<>();
+    private final AtomicLong commitCount = new AtomicLong(0);
+    private final AtomicLong totalCommitNanos = new AtomicLong(0);
+    private final AtomicLong overflowedWrites = new AtomicLong(0);
+    private volatile long lastCommitNanos = 0;
+    private volatile int lastCommitRecords = 0;
+    private volatile int maxQueueDepth = 0;
+
+    // Executor dedicato alle query di lettura asincrone (mai sul main thread)
+    private final ExecutorService queryExecutor;
+
+    // Indice in memoria write-through dell'ultimo teleport per giocatore (solo online)
+    private final ConcurrentHashMap<String, LastTeleport> cooldownIndex = new ConcurrentHashMap<>(64, 0.75f, 4);
+    // Giocatori online (join/quit): solo questi entrano nell'indice, gli altri vanno sempre su SQLite
+    private final Set<String> indexedPlayers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong cooldownIndexHits = new AtomicLong(0);
+    private final AtomicLong cooldownIndexMisses = new AtomicLong(0);
+    private static final int MAX_COOLDOWN_INDEX_SIZE = 5000;
 
     // Metriche performance
     private final AtomicInteger totalQueries = new AtomicInteger(0);
 
-    private static final int BATCH_SIZE = 50;
-    private static final int BATCH_TIMEOUT_MS = 30000; // 30 secondi
-
     public DatabaseManager(LocateCities plugin) {
         this.plugin = plugin;
         this.logger = plugin.getLogger();
         this.dbFile = new File(plugin.getDataFolder(), "teleports.db");
 
-        this.connectionPool = new LinkedBlockingQueue<>(MAX_POOL_SIZE);
-        this.pendingInserts = new LinkedBlockingQueue<>();
-        this.statementCache = new ConcurrentHashMap<>();
+        this.readPoolSize = plugin.getConfigManager().getConnectionPoolSize();
+        this.readPool = new LinkedBlockingQueue<>(readPoolSize);
+
+        // Group commit: per dimensione o per scadenza, entrambi da config
+        this.batchSize = plugin.getConfigManager().getDatabaseBatchSize();
+        this.batchTimeoutNanos = TimeUnit.SECONDS.toNanos(plugin.getConfigManager().getDatabaseBatchTimeout());
+        this.writeQueue = new ArrayBlockingQueue<>(MAX_PENDING_WRITES);
 
-        // Batch processor ottimizzato
-        this.batchProcessor = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "LocateCities-Batch");
+        this.writerThread = new Thread(this::runWriter, "LocateCities-DB-Writer");
+        this.writerThread.setDaemon(true);
+
+        // Un thread per connessione di lettura: le query scalano con il pool
+        AtomicInteger queryThreadId = new AtomicInteger(0);
+        this.queryExecutor = Executors.newFixedThreadPool(readPoolSize, r -> {
+            Thread t = new Thread(r, "LocateCities-DB-Query-" + queryThreadId.incrementAndGet());
             t.setDaemon(true);
             return t;
         });
 
         initDatabase();
-        startBatchProcessor();
+        writerThread.start();
     }
 
     private void initDatabase() {
-        dbLock.writeLock().lock();
         try {
             if (!plugin.getDataFolder().exists()) {
                 if (!plugin.getDataFolder().mkdirs()) {
@@ -74,12 +130,10 @@ public class DatabaseManager {
                 }
             }
 
-            String url = "jdbc:sqlite:" + dbFile.getAbsolutePath() +
-                    "?journal_mode=WAL&synchronous=NORMAL&temp_store=MEMORY&cache_size=10000&foreign_keys=ON";
-            connection = DriverManager.getConnection(url);
+            writeConnection = new PooledConnection(openConnection(false, 10000));
 
             // Ottimizzazioni SQLite
-            try (Statement stmt = connection.createStatement()) {
+            try (Statement stmt = writeConnection.connection.createStatement()) {
                 stmt.execute("PRAGMA journal_mode=WAL");
                 stmt.execute("PRAGMA synchronous=NORMAL");
                 stmt.execute("PRAGMA temp_store=MEMORY");
@@ -88,21 +142,19 @@ public class DatabaseManager {
             }
 
             createOptimizedTables();
-            prepareStatements();
             initConnectionPool();
 
-            logger.info("Database SQLite ottimizzato inizializzato: " + dbFile.getName());
+            logger.info("Database SQLite ottimizzato inizializzato: " + dbFile.getName() +
+                    " (1 writer, " + readPoolSize + " lettori)");
 
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Errore nell'inizializzazione del database", e);
             throw new RuntimeException("Impossibile inizializzare il database", e);
-        } finally {
-            dbLock.writeLock().unlock();
         }
     }
 
     private void createOptimizedTables() throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
+        try (Statement stmt = writeConnection.connection.createStatement()) {
             // CORREZIONE 1: Aggiunto AUTOINCREMENT e rimosso WITHOUT ROWID per evitare l'errore NOT NULL
             stmt.execute("""
                     CREATE TABLE IF NOT EXISTS player_teleports (
@@ -129,96 +181,165 @@ public class DatabaseManager {
         }
     }
 
-    private void initConnectionPool() {
-        try {
-            // Crea pool di connessioni per operazioni concorrenti
-            for (int i = 0; i < MAX_POOL_SIZE - 1; i++) {
-                String url = "jdbc:sqlite:" + dbFile.getAbsolutePath() +
-                        "?journal_mode=WAL&synchronous=NORMAL&temp_store=MEMORY&cache_size=5000";
-                Connection poolConn = DriverManager.getConnection(url);
-                connectionPool.offer(poolConn);
+    private Connection openConnection(boolean readOnly, int cacheSize) throws SQLException {
+        String url = "jdbc:sqlite:" + dbFile.getAbsolutePath() +
+                "?journal_mode=WAL&synchronous=NORMAL&temp_store=MEMORY&cache_size=" + cacheSize +
+                "&foreign_keys=ON&busy_timeout=" + BORROW_TIMEOUT_MS;
+        Connection conn = DriverManager.getConnection(url);
+
+        if (readOnly) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA query_only=ON");
             }
-        } catch (SQLException e) {
-            logger.warning("Errore inizializzazione connection pool: " + e.getMessage());
         }
+        return conn;
     }
 
-    private Connection getPooledConnection() throws SQLException {
-        Connection poolConn = connectionPool.poll();
-        if (poolConn == null || poolConn.isClosed()) {
-            // Fallback alla connessione principale
-            return connection;
+    private void initConnectionPool() throws SQLException {
+        // Ogni connessione di lettura possiede i propri prepared statements
+        for (int i = 0; i < readPoolSize; i++) {
+            readPool.offer(new PooledConnection(openConnection(true, 5000)));
         }
-        return poolConn;
     }
 
-    private void returnPooledConnection(Connection conn) {
-        if (conn != connection && !connectionPool.offer(conn)) {
-            try {
-                conn.close();
-            } catch (SQLException e) {
-                // Ignora errori di chiusura
+    /**
+     * Esegue una lettura su una connessione del pool, senza lock globali
+     */
+    private <T> T withReadConnection(SqlFunction<PooledConnection, T> action) throws SQLException {
+        PooledConnection pooled;
+        try {
+            pooled = readPool.poll(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrotto in attesa di una connessione", e);
+        }
+
+        if (pooled == null) {
+            throw new SQLException("Nessuna connessione di lettura disponibile entro " + BORROW_TIMEOUT_MS + "ms");
+        }
+
+        activeReaders.incrementAndGet();
+        try {
+            if (pooled.connection.isClosed()) {
+                pooled.close(logger);
+                pooled = new PooledConnection(openConnection(true, 5000));
             }
+            return action.apply(pooled);
+        } finally {
+            activeReaders.decrementAndGet();
+            readPool.offer(pooled);
         }
     }
 
-    private void prepareStatements() throws SQLException {
-        // Cache prepared statements per riutilizzo
-        statementCache.put("SELECT_LAST_TELEPORT", connection.prepareStatement("""
-                SELECT city_name, teleport_date FROM player_teleports 
-                WHERE player_name = ? ORDER BY teleport_date DESC LIMIT 1
-                """));
+    /**
+     * Loop del thread writer: accumula i record e li committa quando il batch
+     * è pieno o quando scade il timeout dal primo record del batch.
+     * Le barriere (flush, pulizia, stop) committano prima il batch corrente.
+     */
+    private void runWriter() {
+        List<TeleportRecord> batch = new ArrayList<>(batchSize);
+        long deadline = 0;
+
+        while (true) {
+            deadline = drainOverflow(batch, deadline);
 
-        statementCache.put("SELECT_PLAYER_TELEPORTS", connection.prepareStatement("""
-                SELECT city_name, MAX(teleport_date) as last_teleport 
-                FROM player_teleports WHERE player_name = ? 
-                GROUP BY city_name ORDER BY last_teleport DESC
-                """));
+            WriteOp op;
+            try {
+                if (batch.isEmpty()) {
+                    op = writeQueue.take();
+                } else {
+                    long wait = deadline - System.nanoTime();
+                    op = wait > 0 ? writeQueue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                }
+            } catch (InterruptedException e) {
+                drainOverflow(batch, deadline);
+                commitBatch(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (op == OVERFLOW_SIGNAL) {
+                // I record traboccati vengono presi all'inizio del giro
+                continue;
+            }
+
+            if (op == null) {
+                // Scadenza raggiunta
+                commitBatch(batch);
+                continue;
+            }
+
+            if (op instanceof TeleportRecord) {
+                if (batch.isEmpty()) {
+                    deadline = System.nanoTime() + batchTimeoutNanos;
+                }
+                batch.add((TeleportRecord) op);
+
+                if (batch.size() >= batchSize) {
+                    commitBatch(batch);
+                }
+                continue;
+            }
 
-        statementCache.put("INSERT_TELEPORT", connection.prepareStatement("""
-                INSERT OR REPLACE INTO player_teleports (player_name, city_name, teleport_date) 
-                VALUES (?, ?, ?)
-                """));
+            WriteBarrier barrier = (WriteBarrier) op;
+            // Anche i record traboccati prima della barriera vanno committati prima di eseguirla
+            drainOverflow(batch, deadline);
+            commitBatch(batch);
+            barrier.execute(writeConnection, logger);
 
-        statementCache.put("DELETE_OLD", connection.prepareStatement("""
-                DELETE FROM player_teleports WHERE teleport_date < ?
-                """));
+            if (barrier.stop) {
+                return;
+            }
+        }
     }
 
-    private void startBatchProcessor() {
-        // Processor che gira ogni 15 secondi
-        batchProcessor.scheduleWithFixedDelay(this::processBatchInserts,
-                15, 15, TimeUnit.SECONDS);
+    /**
+     * Sposta nel batch i record traboccati, committando ogni batch pieno
+     *
+     * @return scadenza del batch corrente (invariata se il batch non era vuoto)
+     */
+    private long drainOverflow(List<TeleportRecord> batch, long deadline) {
+        TeleportRecord record;
+        while ((record = overflowRecords.poll()) != null) {
+            if (batch.isEmpty()) {
+                deadline = System.nanoTime() + batchTimeoutNanos;
+            }
+            batch.add(record);
+            if (batch.size() >= batchSize) {
+                commitBatch(batch);
+            }
+        }
+        return deadline;
     }
 
-    private void processBatchInserts() {
-        if (pendingInserts.isEmpty()) return;
+    private void commitBatch(List<TeleportRecord> batch) {
+        if (batch.isEmpty()) return;
 
-        dbLock.writeLock().lock();
+        long start = System.nanoTime();
+        Connection connection = writeConnection.connection;
         try {
             // CORREZIONE 3: Rimosso il try-with-resources per evitare di chiudere lo statement dalla cache
-            PreparedStatement stmt = statementCache.get("INSERT_TELEPORT");
+            PreparedStatement stmt = writeConnection.prepare(SQL_INSERT_TELEPORT);
             connection.setAutoCommit(false);
 
-            int processed = 0;
-            TeleportRecord record;
-
-            // Processa batch
-            while ((record = pendingInserts.poll()) != null && processed < BATCH_SIZE) {
+            for (TeleportRecord record : batch) {
                 stmt.setString(1, record.playerName);
                 stmt.setString(2, record.cityName);
                 stmt.setString(3, record.date.toString());
                 stmt.addBatch();
-                processed++;
             }
 
-            if (processed > 0) {
-                stmt.executeBatch();
-                connection.commit();
-                batchedOperations.addAndGet(processed);
+            stmt.executeBatch();
+            connection.commit();
 
-                logger.fine("Processed " + processed + " teleport records in batch");
-            }
+            long elapsed = System.nanoTime() - start;
+            batchedOperations.addAndGet(batch.size());
+            commitCount.incrementAndGet();
+            totalCommitNanos.addAndGet(elapsed);
+            lastCommitNanos = elapsed;
+            lastCommitRecords = batch.size();
+
+            logger.fine("Processed " + batch.size() + " teleport records in batch");
 
         } catch (SQLException e) {
             try {
@@ -226,90 +347,124 @@ public class DatabaseManager {
             } catch (SQLException rollbackEx) {
                 logger.log(Level.WARNING, "Rollback failed", rollbackEx);
             }
-            logger.log(Level.WARNING, "Batch insert failed", e);
+            logger.log(Level.WARNING, "Batch insert failed (" + batch.size() + " record)", e);
         } finally {
             try {
                 connection.setAutoCommit(true);
             } catch (SQLException e) {
                 logger.warning("Error resetting auto-commit: " + e.getMessage());
             }
-            dbLock.writeLock().unlock();
+
+            for (TeleportRecord record : batch) {
+                uncommittedRecords.remove(record.playerName, record);
+            }
+            batch.clear();
         }
     }
 
     /**
-     * Controlla se il giocatore può fare QUALSIASI teleport (cooldown globale) - OTTIMIZZATO
+     * Accoda un'operazione al writer, attendendo al massimo timeoutMs se la coda è piena.
+     *
+     * @return false se il writer non è attivo, la coda resta piena o il thread viene interrotto
      */
-    public boolean canTeleport(String playerName, int cooldownDays) {
-        if (cooldownDays <= 0) return true;
+    private boolean enqueueWrite(WriteOp op, long timeoutMs) {
+        if (!writerThread.isAlive()) return false;
 
-        if (!isValidPlayerName(playerName)) {
-            logger.warning("Tentativo di accesso con nome giocatore non valido: " + playerName);
+        try {
+            if (!writeQueue.offer(op, timeoutMs, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
 
-        totalQueries.incrementAndGet();
-        dbLock.readLock().lock();
-        try {
-            PreparedStatement stmt = statementCache.get("SELECT_LAST_TELEPORT");
-            stmt.setString(1, sanitizePlayerName(playerName));
+        int depth = writeQueue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        return true;
+    }
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String lastTeleportStr = rs.getString("teleport_date");
-                    if (lastTeleportStr != null) {
-                        LocalDate lastTeleport = LocalDate.parse(lastTeleportStr);
-                        LocalDate now = LocalDate.now();
-
-                        return lastTeleport.plusDays(cooldownDays).isBefore(now) ||
-                                lastTeleport.plusDays(cooldownDays).equals(now);
-                    }
-                }
-                return true;
-            }
+    private <T> CompletableFuture<T> submitBarrier(SqlFunction<PooledConnection, T> action, boolean stop) {
+        WriteBarrier barrier = new WriteBarrier(action, stop);
+        if (!writerThread.isAlive()) {
+            barrier.future.completeExceptionally(new IllegalStateException("Writer del database non attivo"));
+            return barrier.future();
+        }
 
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "Errore nel controllo cooldown per: " + playerName, e);
-            return true; // In caso di errore, permetti il teleport
-        } finally {
-            dbLock.readLock().unlock();
+        if (!enqueueWrite(barrier, BARRIER_OFFER_TIMEOUT_MS)) {
+            barrier.future.completeExceptionally(new IllegalStateException("Coda di scrittura piena o writer non attivo"));
         }
+        return barrier.future();
     }
 
     /**
-     * Ottiene i giorni rimanenti del cooldown globale - OTTIMIZZATO
+     * Committa tutti i record accodati finora. Il future completa quando sono su disco.
      */
-    public int getRemainingDays(String playerName, int cooldownDays) {
-        if (cooldownDays <= 0 || !isValidPlayerName(playerName)) return 0;
+    public CompletableFuture<Void> flush() {
+        return submitBarrier(writer -> null, false);
+    }
 
-        totalQueries.incrementAndGet();
-        dbLock.readLock().lock();
+    /**
+     * Committa tutti i record accodati e attende il risultato (es. allo shutdown)
+     */
+    public boolean flushAndWait(long timeoutMs) {
         try {
-            PreparedStatement stmt = statementCache.get("SELECT_LAST_TELEPORT");
-            stmt.setString(1, sanitizePlayerName(playerName));
+            flush().get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            logger.log(Level.WARNING, "Flush del database non completato", e);
+            return false;
+        }
+    }
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String lastTeleportStr = rs.getString("teleport_date");
-                    if (lastTeleportStr != null) {
-                        LocalDate lastTeleport = LocalDate.parse(lastTeleportStr);
-                        LocalDate now = LocalDate.now();
-                        LocalDate nextAvailable = lastTeleport.plusDays(cooldownDays);
-
-                        if (nextAvailable.isAfter(now)) {
-                            return (int) (nextAvailable.toEpochDay() - now.toEpochDay());
-                        }
-                    }
-                }
-                return 0;
-            }
+    /**
+     * Valuta il cooldown globale in modo asincrono con una sola query.
+     * Il future completa su un thread del database: chi deve inviare messaggi
+     * al giocatore deve tornare sul main thread.
+     */
+    public CompletableFuture<CooldownStatus> getCooldownStatusAsync(String playerName, int cooldownDays) {
+        return CompletableFuture.supplyAsync(() -> getCooldownStatus(playerName, cooldownDays), queryExecutor);
+    }
 
+    /**
+     * Valuta il cooldown globale (flag, giorni rimanenti, ultima data e città) con una sola query
+     */
+    public CooldownStatus getCooldownStatus(String playerName, int cooldownDays) {
+        if (!isValidPlayerName(playerName)) {
+            logger.warning("Tentativo di accesso con nome giocatore non valido: " + playerName);
+            return new CooldownStatus(false, 0, null, null);
+        }
+
+        LastTeleport last;
+        try {
+            last = lookupLastTeleport(playerName);
         } catch (SQLException e) {
-            logger.log(Level.WARNING, "Errore nel calcolo giorni rimanenti per: " + playerName, e);
-            return 0;
-        } finally {
-            dbLock.readLock().unlock();
+            logger.log(Level.WARNING, "Errore nel controllo cooldown per: " + playerName, e);
+            return CooldownStatus.ALLOWED; // In caso di errore, permetti il teleport
         }
+
+        return evaluateCooldown(last, cooldownDays);
+    }
+
+    /**
+     * Controlla se il giocatore può fare QUALSIASI teleport (cooldown globale) - OTTIMIZZATO
+     */
+    public boolean canTeleport(String playerName, int cooldownDays) {
+        if (cooldownDays <= 0) return true;
+        return getCooldownStatus(playerName, cooldownDays).isAllowed();
+    }
+
+    /**
+     * Ottiene i giorni rimanenti del cooldown globale - OTTIMIZZATO
+     */
+    public int getRemainingDays(String playerName, int cooldownDays) {
+        if (cooldownDays <= 0 || !isValidPlayerName(playerName)) return 0;
+        return getCooldownStatus(playerName, cooldownDays).getRemainingDays();
     }
 
     /**
@@ -318,25 +473,12 @@ public class DatabaseManager {
     public LocalDate getLastTeleportDate(String playerName) {
         if (!isValidPlayerName(playerName)) return null;
 
-        totalQueries.incrementAndGet();
-        dbLock.readLock().lock();
         try {
-            PreparedStatement stmt = statementCache.get("SELECT_LAST_TELEPORT");
-            stmt.setString(1, sanitizePlayerName(playerName));
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String dateStr = rs.getString("teleport_date");
-                    return dateStr != null ? LocalDate.parse(dateStr) : null;
-                }
-                return null;
-            }
-
+            LastTeleport last = lookupLastTeleport(playerName);
+            return last != null ? last.date : null;
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Errore nel recupero ultimo teleport per: " + playerName, e);
             return null;
-        } finally {
-            dbLock.readLock().unlock();
         }
     }
 
@@ -346,22 +488,118 @@ public class DatabaseManager {
     public String getLastTeleportCity(String playerName) {
         if (!isValidPlayerName(playerName)) return null;
 
-        totalQueries.incrementAndGet();
-        dbLock.readLock().lock();
         try {
-            PreparedStatement stmt = statementCache.get("SELECT_LAST_TELEPORT");
+            LastTeleport last = lookupLastTeleport(playerName);
+            return last != null ? last.cityName : null;
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Errore nel recupero ultima città per: " + playerName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Legge l'ultimo teleport dall'indice in memoria; interroga SQLite solo per i giocatori non ancora indicizzati.
+     * Il valore letto viene indicizzato solo se il giocatore è online (playerhistory & co. non riempiono l'indice)
+     */
+    private LastTeleport lookupLastTeleport(String playerName) throws SQLException {
+        String key = sanitizePlayerName(playerName);
+
+        LastTeleport cached = cooldownIndex.get(key);
+        if (cached != null) {
+            cooldownIndexHits.incrementAndGet();
+            return cached.orNull();
+        }
+
+        cooldownIndexMisses.incrementAndGet();
+        LastTeleport loaded = applyPendingInserts(key, queryLastTeleport(playerName));
+
+        if (!indexedPlayers.contains(key) || cooldownIndex.size() >= MAX_COOLDOWN_INDEX_SIZE) {
+            return loaded;
+        }
+
+        // putIfAbsent: un recordTeleport concorrente ha sempre la precedenza sul valore letto dal DB
+        LastTeleport value = loaded != null ? loaded : LastTeleport.NONE;
+        LastTeleport existing = cooldownIndex.putIfAbsent(key, value);
+        dropIfOffline(key);
+        return existing != null ? existing.orNull() : loaded;
+    }
+
+    /**
+     * Un quit concorrente può aver già svuotato l'indice prima dell'inserimento: lo ripete
+     */
+    private void dropIfOffline(String key) {
+        if (!indexedPlayers.contains(key)) {
+            cooldownIndex.remove(key);
+        }
+    }
+
+    /**
+     * I record ancora in coda non sono visibili a SQLite: li applica al valore letto
+     */
+    private LastTeleport applyPendingInserts(String key, LastTeleport fromDb) {
+        TeleportRecord record = uncommittedRecords.get(key);
+        if (record != null && (fromDb == null || fromDb.date == null || !record.date.isBefore(fromDb.date))) {
+            return new LastTeleport(record.cityName, record.date);
+        }
+        return fromDb;
+    }
+
+    /**
+     * Precarica l'indice cooldown per un giocatore online (al join), fuori dal main thread
+     */
+    public void warmCooldownIndexAsync(String playerName) {
+        if (!isValidPlayerName(playerName)) return;
+        indexedPlayers.add(sanitizePlayerName(playerName));
+
+        queryExecutor.execute(() -> {
+            try {
+                lookupLastTeleport(playerName);
+            } catch (SQLException e) {
+                logger.log(Level.FINE, "Impossibile precaricare il cooldown di: " + playerName, e);
+            }
+        });
+    }
+
+    /**
+     * Rimuove un giocatore dall'indice cooldown (al quit)
+     */
+    public void evictCooldownIndex(String playerName) {
+        if (playerName == null) return;
+        String key = sanitizePlayerName(playerName);
+        indexedPlayers.remove(key);
+        cooldownIndex.remove(key);
+    }
+
+    private LastTeleport queryLastTeleport(String playerName) throws SQLException {
+        totalQueries.incrementAndGet();
+        return withReadConnection(reader -> {
+            PreparedStatement stmt = reader.prepare(SQL_SELECT_LAST_TELEPORT);
             stmt.setString(1, sanitizePlayerName(playerName));
 
             try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next() ? rs.getString("city_name") : null;
+                if (!rs.next()) return null;
+
+                String dateStr = rs.getString("teleport_date");
+                LocalDate date = dateStr != null ? LocalDate.parse(dateStr) : null;
+                return new LastTeleport(rs.getString("city_name"), date);
             }
+        });
+    }
 
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "Errore nel recupero ultima città per: " + playerName, e);
-            return null;
-        } finally {
-            dbLock.readLock().unlock();
+    private CooldownStatus evaluateCooldown(LastTeleport last, int cooldownDays) {
+        if (last == null || last.date == null) {
+            return new CooldownStatus(true, 0, null, last != null ? last.cityName : null);
+        }
+
+        LocalDate now = LocalDate.now();
+        LocalDate nextAvailable = last.date.plusDays(Math.max(cooldownDays, 0));
+
+        if (cooldownDays <= 0 || !nextAvailable.isAfter(now)) {
+            return new CooldownStatus(true, 0, last.date, last.cityName);
         }
+
+        int remaining = (int) (nextAvailable.toEpochDay() - now.toEpochDay());
+        return new CooldownStatus(false, remaining, last.date, last.cityName);
     }
 
     /**
@@ -374,35 +612,30 @@ public class DatabaseManager {
             return;
         }
 
-        // Aggiunge alla coda per batch processing
+        // Aggiunge alla pipeline del writer (group commit)
         TeleportRecord record = new TeleportRecord(
                 sanitizePlayerName(playerName),
                 sanitizeCityName(cityName),
                 LocalDate.now()
         );
 
-        if (!pendingInserts.offer(record)) {
-            logger.warning("Failed to queue teleport record - queue full");
-            // Fallback: inserimento diretto
-            insertTeleportDirect(record);
+        // Write-through: l'indice è aggiornato prima del flush batch
+        if (indexedPlayers.contains(record.playerName)) {
+            cooldownIndex.put(record.playerName, new LastTeleport(record.cityName, record.date));
+            dropIfOffline(record.playerName);
         }
-    }
-
-    private void insertTeleportDirect(TeleportRecord record) {
-        dbLock.writeLock().lock();
-        try {
-            PreparedStatement stmt = statementCache.get("INSERT_TELEPORT");
-            stmt.setString(1, record.playerName);
-            stmt.setString(2, record.cityName);
-            stmt.setString(3, record.date.toString());
-
-            stmt.executeUpdate();
-            logger.fine("Direct insert: " + record.playerName + " -> " + record.cityName);
-
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "Errore nell'inserimento diretto teleport", e);
-        } finally {
-            dbLock.writeLock().unlock();
+        uncommittedRecords.put(record.playerName, record);
+
+        // Mai bloccare il tick e mai perdere il record: con la coda piena passa alla lista di trabocco
+        if (!enqueueWrite(record, 0)) {
+            overflowRecords.offer(record);
+            long overflowed = overflowedWrites.incrementAndGet();
+            if (overflowed == 1 || overflowed % 100 == 0) {
+                logger.warning("Coda di scrittura piena o writer non attivo: teleport in attesa nella lista di trabocco" +
+                        " (" + overflowed + " in totale)");
+            }
+            // Se la coda è ancora piena il writer è già sveglio e svuoterà la lista al prossimo giro
+            writeQueue.offer(OVERFLOW_SIGNAL);
         }
     }
 
@@ -414,121 +647,119 @@ public class DatabaseManager {
         if (!isValidPlayerName(playerName)) return teleports;
 
         totalQueries.incrementAndGet();
-        dbLock.readLock().lock();
         try {
-            PreparedStatement stmt = statementCache.get("SELECT_PLAYER_TELEPORTS");
-            stmt.setString(1, sanitizePlayerName(playerName));
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    String cityName = rs.getString("city_name");
-                    String dateStr = rs.getString("last_teleport");
-
-                    if (cityName != null && dateStr != null) {
-                        try {
-                            teleports.put(cityName, LocalDate.parse(dateStr));
-                        } catch (Exception e) {
-                            logger.warning("Data non valida nel database: " + dateStr);
+            withReadConnection(reader -> {
+                PreparedStatement stmt = reader.prepare(SQL_SELECT_PLAYER_TELEPORTS);
+                stmt.setString(1, sanitizePlayerName(playerName));
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String cityName = rs.getString("city_name");
+                        String dateStr = rs.getString("last_teleport");
+
+                        if (cityName != null && dateStr != null) {
+                            try {
+                                teleports.put(cityName, LocalDate.parse(dateStr));
+                            } catch (Exception e) {
+                                logger.warning("Data non valida nel database: " + dateStr);
+                            }
                         }
                     }
                 }
-            }
+                return null;
+            });
 
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Errore nel recupero teleport del giocatore: " + playerName, e);
-        } finally {
-            dbLock.readLock().unlock();
         }
 
         return teleports;
     }
 
     /**
-     * Pulisce i record vecchi - OTTIMIZZATO con batch delete
+     * Pulisce i record vecchi - OTTIMIZZATO con batch delete.
+     * Eseguito dal writer dopo il commit dei record già accodati; il future
+     * restituisce il numero di record eliminati.
      */
-    public void clearOldTeleports(int daysToKeep) {
-        if (daysToKeep < 1) return;
+    public CompletableFuture<Integer> clearOldTeleports(int daysToKeep) {
+        if (daysToKeep < 1) return CompletableFuture.completedFuture(0);
 
-        // Forza processamento batch pendenti prima della pulizia
-        processBatchInserts();
-
-        dbLock.writeLock().lock();
-        try {
-            LocalDate cutoffDate = LocalDate.now().minusDays(daysToKeep);
-            PreparedStatement stmt = statementCache.get("DELETE_OLD");
+        LocalDate cutoffDate = LocalDate.now().minusDays(daysToKeep);
+        return submitBarrier(writer -> {
+            PreparedStatement stmt = writer.prepare(SQL_DELETE_OLD);
             stmt.setString(1, cutoffDate.toString());
 
             int deleted = stmt.executeUpdate();
+
+            // Allinea l'indice cooldown ai record eliminati
+            cooldownIndex.values().removeIf(last -> last.date != null && last.date.isBefore(cutoffDate));
+
             if (deleted > 0) {
                 logger.info("Eliminati " + deleted + " record più vecchi di " + daysToKeep + " giorni");
 
                 // CORREZIONE 4: Sostituito PRAGMA optimize con VACUUM
-                try (Statement optimizeStmt = connection.createStatement()) {
+                try (Statement optimizeStmt = writer.connection.createStatement()) {
                     optimizeStmt.execute("VACUUM");
                 }
             }
-
-        } catch (SQLException e) {
-            logger.log(Level.WARNING, "Errore nella pulizia dei teleport vecchi", e);
-        } finally {
-            dbLock.writeLock().unlock();
-        }
+            return deleted;
+        }, false);
     }
 
     /**
      * Chiude il database in modo ottimizzato
      */
     public void close() {
-        // Ferma batch processor
-        batchProcessor.shutdown();
+        // Ferma le query asincrone
+        queryExecutor.shutdown();
         try {
-            if (!batchProcessor.awaitTermination(5, TimeUnit.SECONDS)) {
-                batchProcessor.shutdownNow();
+            if (!queryExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                queryExecutor.shutdownNow();
             }
         } catch (InterruptedException e) {
-            batchProcessor.shutdownNow();
+            queryExecutor.shutdownNow();
             Thread.currentThread().interrupt();
         }
 
-        // Processa batch rimanenti
-        processBatchInserts();
-
-        dbLock.writeLock().lock();
+        // Committa i record rimanenti e ferma il writer
         try {
-            // Chiudi prepared statements
-            statementCache.values().forEach(stmt -> {
-                try {
-                    stmt.close();
-                } catch (SQLException e) {
-                    logger.warning("Error closing prepared statement: " + e.getMessage());
-                }
-            });
-            statementCache.clear();
+            submitBarrier(writer -> null, true).get(10, TimeUnit.SECONDS);
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.log(Level.WARNING, "Writer del database non terminato correttamente", e);
+        }
 
-            // Chiudi connection pool
-            Connection poolConn;
-            while ((poolConn = connectionPool.poll()) != null) {
-                try {
-                    poolConn.close();
-                } catch (SQLException e) {
-                    logger.warning("Error closing pooled connection: " + e.getMessage());
-                }
-            }
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+            logger.warning("Chiusura database con writer ancora attivo: " + writeQueue.size() + " operazioni in coda");
+        } else if (!overflowRecords.isEmpty()) {
+            // Writer terminato (o mai partito): i record traboccati si scrivono qui, la connessione è libera
+            List<TeleportRecord> remaining = new ArrayList<>(overflowRecords.size());
+            drainOverflow(remaining, 0);
+            commitBatch(remaining);
+        }
+
+        // Chiudi connection pool (ogni connessione chiude i propri statements)
+        PooledConnection pooled;
+        while ((pooled = readPool.poll()) != null) {
+            pooled.close(logger);
+        }
 
-            // Chiudi connessione principale
-            if (connection != null && !connection.isClosed()) {
+        try {
+            // Chiudi connessione writer
+            if (writeConnection != null && !writeConnection.connection.isClosed()) {
                 // CORREZIONE 4: Sostituito PRAGMA optimize con VACUUM prima della chiusura
-                try (Statement stmt = connection.createStatement()) {
+                try (Statement stmt = writeConnection.connection.createStatement()) {
                     stmt.execute("VACUUM");
                 }
-                connection.close();
+                writeConnection.close(logger);
                 logger.info("Database chiuso correttamente");
             }
 
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Errore nella chiusura del database", e);
-        } finally {
-            dbLock.writeLock().unlock();
         }
     }
 
@@ -555,41 +786,68 @@ public class DatabaseManager {
      * Statistiche database ottimizzate
      */
     public String getDatabaseStats() {
-        dbLock.readLock().lock();
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) as total FROM player_teleports")) {
-
-            if (rs.next()) {
-                int totalRecords = rs.getInt("total");
-                long dbSize = dbFile.length() / 1024; // KB
-                int queries = totalQueries.get();
-                int batched = batchedOperations.get();
-
-                return String.format("DB: %d records, %d KB, %d queries, %d batched",
-                        totalRecords, dbSize, queries, batched);
-            }
+        try {
+            return withReadConnection(reader -> {
+                try (Statement stmt = reader.connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) as total FROM player_teleports")) {
+
+                    if (!rs.next()) return "Statistiche non disponibili";
+
+                    int totalRecords = rs.getInt("total");
+                    long dbSize = dbFile.length() / 1024; // KB
+                    int queries = totalQueries.get();
+                    int batched = batchedOperations.get();
+
+                    return String.format("DB: %d records, %d KB, %d queries, %d batched, pool %d/%d in uso",
+                            totalRecords, dbSize, queries, batched, activeReaders.get(), readPoolSize);
+                }
+            });
 
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Errore statistiche database", e);
-        } finally {
-            dbLock.readLock().unlock();
         }
 
         return "Statistiche non disponibili";
     }
 
+    /**
+     * Statistiche dell'indice cooldown in memoria
+     */
+    public String getCooldownIndexStats() {
+        long hits = cooldownIndexHits.get();
+        long misses = cooldownIndexMisses.get();
+        double hitRate = hits + misses > 0 ? (double) hits / (hits + misses) * 100 : 0.0;
+
+        return String.format("Cooldown index: %d giocatori, %d hit, %d miss (%.1f%% hit rate)",
+                cooldownIndex.size(), hits, misses, hitRate);
+    }
+
+    /**
+     * Metriche della pipeline di scrittura
+     */
+    public String getWriterStats() {
+        long commits = commitCount.get();
+        double avgCommitMs = commits > 0 ? totalCommitNanos.get() / (double) commits / 1_000_000.0 : 0.0;
+        double avgRecords = commits > 0 ? batchedOperations.get() / (double) commits : 0.0;
+
+        return String.format("Writer: coda %d/%d (max %d), %d commit, latenza %.2f ms (ultima %.2f ms), %.1f record/commit (ultimo %d), %d in trabocco (totale %d)",
+                writeQueue.size(), MAX_PENDING_WRITES, maxQueueDepth, commits,
+                avgCommitMs, lastCommitNanos / 1_000_000.0, avgRecords, lastCommitRecords, overflowRecords.size(), overflowedWrites.get());
+    }
+
     public boolean checkDatabaseIntegrity() {
-        dbLock.readLock().lock();
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery("PRAGMA integrity_check")) {
+        try {
+            return withReadConnection(reader -> {
+                try (Statement stmt = reader.connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("PRAGMA integrity_check")) {
 
-            return rs.next() && "ok".equals(rs.getString(1));
+                    return rs.next() && "ok".equals(rs.getString(1));
+                }
+            });
 
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Errore controllo integrità", e);
             return false;
-        } finally {
-            dbLock.readLock().unlock();
         }
     }
 
@@ -604,8 +862,12 @@ public class DatabaseManager {
         return getRemainingDays(playerName, cooldownDays);
     }
 
+    // Operazione accodata al writer
+    private interface WriteOp {
+    }
+
     // Classe helper per batch operations
-    private static class TeleportRecord {
+    private static class TeleportRecord implements WriteOp {
         final String playerName;
         final String cityName;
         final LocalDate date;
@@ -616,4 +878,117 @@ public class DatabaseManager {
             this.date = date;
         }
     }
+
+    /**
+     * Barriera nella coda di scrittura: viene eseguita dopo il commit di tutti i record precedenti
+     */
+    private static class WriteBarrier implements WriteOp {
+        private final SqlFunction<PooledConnection, ?> action;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        final boolean stop;
+
+        WriteBarrier(SqlFunction<PooledConnection, ?> action, boolean stop) {
+            this.action = action;
+            this.stop = stop;
+        }
+
+        void execute(PooledConnection writer, Logger logger) {
+            try {
+                future.complete(action.apply(writer));
+            } catch (SQLException | RuntimeException e) {
+                logger.log(Level.WARNING, "Operazione di scrittura fallita", e);
+                future.completeExceptionally(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> CompletableFuture<T> future() {
+            return (CompletableFuture<T>) (CompletableFuture<?>) future;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlFunction<T, R> {
+        R apply(T t) throws SQLException;
+    }
+
+    /**
+     * Connessione del pool con la propria cache di prepared statements.
+     * Usata da un solo thread alla volta, quindi la cache non richiede sincronizzazione.
+     */
+    private static class PooledConnection {
+        final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null || stmt.isClosed()) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        void close(Logger logger) {
+            statements.values().forEach(stmt -> {
+                try {
+                    stmt.close();
+                } catch (SQLException e) {
+                    logger.warning("Error closing prepared statement: " + e.getMessage());
+                }
+            });
+            statements.clear();
+
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warning("Error closing pooled connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class LastTeleport {
+        // Segnaposto per "giocatore senza teleport", perché la mappa non accetta null
+        static final LastTeleport NONE = new LastTeleport(null, null);
+
+        final String cityName;
+        final LocalDate date;
+
+        LastTeleport(String cityName, LocalDate date) {
+            this.cityName = cityName;
+            this.date = date;
+        }
+
+        LastTeleport orNull() {
+            return this == NONE ? null : this;
+        }
+    }
+
+    /**
+     * Risultato della valutazione del cooldown globale di un giocatore
+     */
+    public static class CooldownStatus {
+        static final CooldownStatus ALLOWED = new CooldownStatus(true, 0, null, null);
+
+        private final boolean allowed;
+        private final int remainingDays;
+        private final LocalDate lastTeleportDate;
+        private final String lastTeleportCity;
+
+        public CooldownStatus(boolean allowed, int remainingDays, LocalDate lastTeleportDate, String lastTeleportCity) {
+            this.allowed = allowed;
+            this.remainingDays = remainingDays;
+            this.lastTeleportDate = lastTeleportDate;
+            this.lastTeleportCity = lastTeleportCity;
+        }
+
+        public boolean isAllowed() { return allowed; }
+        public int getRemainingDays() { return remainingDays; }
+        public LocalDate getLastTeleportDate() { return lastTeleportDate; }
+        public String getLastTeleportCity() { return lastTeleportCity; }
+    }
 }
\ No newline at end of file
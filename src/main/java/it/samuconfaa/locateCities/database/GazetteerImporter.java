@@ -0,0 +1,402 @@
+package it.samuconfaa.locateCities.database;
+
+import it.samuconfaa.locateCities.utils.CityNames;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Importa un dump GeoNames (cities15000.txt, allCountries.txt, ...) nel formato di {@link GazetteerIndex}.
+ *
+ * Il TSV viene letto in streaming; le chiavi (nome, nome ASCII e nomi alternativi,
+ * compresi gli esonimi italiani come "londra" o "parigi") vengono ordinate in run
+ * di dimensione fissa su file temporanei e poi unite con un merge k-way, quindi la
+ * memoria resta limitata anche con file da milioni di righe.
+ *
+ * Uso standalone: java -cp LocateCities.jar it.samuconfaa.locateCities.database.GazetteerImporter
+ * &lt;input.txt&gt; &lt;gazetteer.bin&gt; [popolazione_minima]
+ */
+public class GazetteerImporter {
+
+    private static final int RUN_SIZE = 250_000;
+    private static final int PROGRESS_INTERVAL = 500_000;
+    private static final int MAX_KEY_LENGTH = 100;
+
+    // Colonne del formato GeoNames
+    private static final int COL_NAME = 1;
+    private static final int COL_ASCII_NAME = 2;
+    private static final int COL_ALTERNATE_NAMES = 3;
+    private static final int COL_LATITUDE = 4;
+    private static final int COL_LONGITUDE = 5;
+    private static final int COL_FEATURE_CLASS = 6;
+    private static final int COL_POPULATION = 14;
+    private static final int MIN_COLUMNS = 15;
+
+    // Stessi caratteri accettati per le ricerche dei giocatori
+    private static final Pattern VALID_KEY = Pattern.compile("^[a-zà-ÿ0-9 \\-'.,]+$");
+
+    private final int minPopulation;
+    private final Consumer<String> progress;
+
+    public GazetteerImporter(int minPopulation, Consumer<String> progress) {
+        this.minPopulation = Math.max(minPopulation, 0);
+        this.progress = progress;
+    }
+
+    public ImportResult importFile(File input, File output) throws IOException {
+        long start = System.nanoTime();
+        File workDir = output.getAbsoluteFile().getParentFile();
+        List<File> runs = new ArrayList<>();
+
+        long rows = 0;
+        long places = 0;
+
+        try {
+            List<Entry> buffer = new ArrayList<>(RUN_SIZE);
+            Set<String> rowKeys = new HashSet<>();
+
+            try (BufferedReader reader = Files.newBufferedReader(input.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    rows++;
+                    if (rows % PROGRESS_INTERVAL == 0) {
+                        progress.accept(String.format("Lette %d righe (%.0f righe/s)", rows, rate(rows, start)));
+                    }
+
+                    String[] columns = line.split("\t", -1);
+                    if (columns.length < MIN_COLUMNS) continue;
+
+                    // Solo luoghi abitati (feature class P)
+                    String featureClass = columns[COL_FEATURE_CLASS];
+                    if (!featureClass.isEmpty() && !featureClass.equals("P")) continue;
+
+                    int population = parsePopulation(columns[COL_POPULATION]);
+                    if (population < minPopulation) continue;
+
+                    int lat;
+                    int lon;
+                    try {
+                        lat = (int) Math.round(Double.parseDouble(columns[COL_LATITUDE]) * GazetteerIndex.COORDINATE_SCALE);
+                        lon = (int) Math.round(Double.parseDouble(columns[COL_LONGITUDE]) * GazetteerIndex.COORDINATE_SCALE);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+
+                    places++;
+                    String name = columns[COL_NAME].trim();
+                    rowKeys.clear();
+
+                    addKey(buffer, rowKeys, name, name, lat, lon, population);
+                    addKey(buffer, rowKeys, columns[COL_ASCII_NAME], name, lat, lon, population);
+                    if (!columns[COL_ALTERNATE_NAMES].isEmpty()) {
+                        for (String alternate : columns[COL_ALTERNATE_NAMES].split(",")) {
+                            // Per gli esonimi si mostra il nome cercato (es. "Londra")
+                            addKey(buffer, rowKeys, alternate, alternate.trim(), lat, lon, population);
+                        }
+                    }
+
+                    if (buffer.size() >= RUN_SIZE) {
+                        runs.add(writeRun(buffer, workDir, runs.size()));
+                        buffer.clear();
+                    }
+                }
+            }
+
+            if (!buffer.isEmpty()) {
+                runs.add(writeRun(buffer, workDir, runs.size()));
+                buffer.clear();
+            }
+
+            int entries = mergeRuns(runs, output);
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            ImportResult result = new ImportResult(rows, places, entries, millis);
+            progress.accept(result.toString());
+            return result;
+
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+    }
+
+    private void addKey(List<Entry> buffer, Set<String> rowKeys, String raw, String displayName,
+                        int lat, int lon, int population) {
+        String key = normalizeKey(raw);
+        if (key == null || !rowKeys.add(key)) return;
+
+        byte[] name = displayName.getBytes(StandardCharsets.UTF_8);
+        if (name.length == 0 || name.length > Short.MAX_VALUE) return;
+
+        buffer.add(new Entry(key.getBytes(StandardCharsets.UTF_8), name, lat, lon, population));
+    }
+
+    /**
+     * Stessa normalizzazione usata nelle ricerche (chiave senza alias: gli alias si risolvono in lettura)
+     */
+    static String normalizeKey(String raw) {
+        if (raw == null) return null;
+
+        String key = CityNames.foldKey(raw);
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) return null;
+        return VALID_KEY.matcher(key).matches() ? key : null;
+    }
+
+    private File writeRun(List<Entry> buffer, File workDir, int index) throws IOException {
+        buffer.sort((a, b) -> Arrays.compareUnsigned(a.key, b.key));
+
+        File run = new File(workDir, "gazetteer-run-" + index + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            for (Entry entry : buffer) {
+                entry.writeRecord(out);
+            }
+        }
+
+        progress.accept("Scritto blocco ordinato " + (index + 1) + " (" + buffer.size() + " chiavi)");
+        return run;
+    }
+
+    /**
+     * Merge k-way dei run ordinati. Per chiavi duplicate vince il luogo più popoloso.
+     * Tabella offset e area dati vengono scritte in streaming su due file separati e poi concatenate.
+     */
+    private int mergeRuns(List<File> runs, File output) throws IOException {
+        File workDir = output.getAbsoluteFile().getParentFile();
+        File offsetsFile = new File(workDir, "gazetteer-offsets.tmp");
+        File dataFile = new File(workDir, "gazetteer-data.tmp");
+        File tempOutput = new File(workDir, output.getName() + ".tmp");
+
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> Arrays.compareUnsigned(a.current.key, b.current.key));
+        List<RunReader> readers = new ArrayList<>();
+        int count = 0;
+
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) queue.add(reader);
+            }
+
+            try (DataOutputStream offsets = new DataOutputStream(
+                         new BufferedOutputStream(new FileOutputStream(offsetsFile), 1 << 16));
+                 DataOutputStream data = new DataOutputStream(
+                         new BufferedOutputStream(new FileOutputStream(dataFile), 1 << 16))) {
+
+                Entry best = null;
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    Entry entry = reader.current;
+                    if (reader.advance()) queue.add(reader);
+
+                    if (best != null && Arrays.equals(best.key, entry.key)) {
+                        if (entry.population > best.population) best = entry;
+                        continue;
+                    }
+
+                    if (best != null) {
+                        offsets.writeInt(data.size());
+                        best.writeRecord(data);
+                        count++;
+                    }
+                    best = entry;
+                }
+
+                if (best != null) {
+                    offsets.writeInt(data.size());
+                    best.writeRecord(data);
+                    count++;
+                }
+
+                // DataOutputStream.size() satura a Integer.MAX_VALUE
+                if (data.size() == Integer.MAX_VALUE) {
+                    throw new IOException("Gazetteer troppo grande (oltre 2 GB): aumenta la popolazione minima");
+                }
+            }
+
+            long dataOffset = GazetteerIndex.HEADER_SIZE + (long) count * 4;
+            if (dataOffset + dataFile.length() > Integer.MAX_VALUE) {
+                throw new IOException("Gazetteer troppo grande (oltre 2 GB): aumenta la popolazione minima");
+            }
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempOutput), 1 << 16))) {
+                out.writeInt(GazetteerIndex.MAGIC);
+                out.writeInt(GazetteerIndex.VERSION);
+                out.writeInt(count);
+                out.writeInt((int) dataOffset);
+                copy(offsetsFile, out);
+                copy(dataFile, out);
+            }
+
+            Files.move(tempOutput.toPath(), output.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            offsetsFile.delete();
+            dataFile.delete();
+            tempOutput.delete();
+        }
+    }
+
+    private static void copy(File source, OutputStream out) throws IOException {
+        try (InputStream in = new FileInputStream(source)) {
+            in.transferTo(out);
+        }
+    }
+
+    private static int parsePopulation(String value) {
+        if (value.isEmpty()) return 0;
+        try {
+            return (int) Math.min(Long.parseLong(value), Integer.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double rate(long rows, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds > 0 ? rows / seconds : 0.0;
+    }
+
+    private static class Entry {
+        final byte[] key;
+        final byte[] name;
+        final int lat;
+        final int lon;
+        final int population;
+
+        Entry(byte[] key, byte[] name, int lat, int lon, int population) {
+            this.key = key;
+            this.name = name;
+            this.lat = lat;
+            this.lon = lon;
+            this.population = population;
+        }
+
+        /**
+         * Stesso layout del record in {@link GazetteerIndex}
+         */
+        void writeRecord(DataOutputStream out) throws IOException {
+            out.writeShort(key.length);
+            out.write(key);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeInt(lat);
+            out.writeInt(lon);
+            out.writeInt(population);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            byte[] key = new byte[in.readUnsignedShort()];
+            in.readFully(key);
+            byte[] name = new byte[in.readUnsignedShort()];
+            in.readFully(name);
+            return new Entry(key, name, in.readInt(), in.readInt(), in.readInt());
+        }
+    }
+
+    private static class RunReader {
+        private final DataInputStream in;
+        Entry current;
+
+        RunReader(File run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                current = Entry.read(in);
+                return true;
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // File temporaneo, viene comunque eliminato
+            }
+        }
+    }
+
+    public static class ImportResult {
+        private final long rows;
+        private final long places;
+        private final int entries;
+        private final long millis;
+
+        ImportResult(long rows, long places, int entries, long millis) {
+            this.rows = rows;
+            this.places = places;
+            this.entries = entries;
+            this.millis = millis;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getPlaces() {
+            return places;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public double getRowsPerSecond() {
+            return millis > 0 ? rows * 1000.0 / millis : rows;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Import completato: %d righe, %d luoghi, %d chiavi in %.1fs (%.0f righe/s)",
+                    rows, places, entries, millis / 1000.0, getRowsPerSecond());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Uso: GazetteerImporter <input.txt> <gazetteer.bin> [popolazione_minima]");
+            System.exit(1);
+        }
+
+        int minPopulation = args.length >= 3 ? Integer.parseInt(args[2]) : 0;
+        new GazetteerImporter(minPopulation, System.out::println)
+                .importFile(new File(args[0]), new File(args[1]));
+    }
+}
\ No newline at end of file
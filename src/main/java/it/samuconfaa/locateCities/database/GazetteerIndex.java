@@ -0,0 +1,193 @@
+package it.samuconfaa.locateCities.database;
+
+import it.samuconfaa.locateCities.data.CityData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gazetteer offline in formato binario ordinato, letto tramite memory mapping.
+ *
+ * Formato (big endian):
+ * header [magic][versione][numero entry][offset area dati]
+ * tabella [offset record]*n, ordinata per chiave (confronto byte a byte UTF-8)
+ * dati    [chiave: short + UTF-8][nome: short + UTF-8][lat * 1e6: int][lon * 1e6: int][popolazione: int]
+ *
+ * Il file non viene mai caricato sull'heap: la ricerca è una binary search
+ * direttamente sul buffer mappato, con sole letture assolute (thread-safe).
+ */
+public class GazetteerIndex {
+
+    public static final int MAGIC = 0x4C434731; // "LCG1"
+    // 2: chiavi canoniche senza accenti (CityNames)
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 16;
+    public static final double COORDINATE_SCALE = 1_000_000.0;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+    private final int dataOffset;
+
+    private GazetteerIndex(File file, MappedByteBuffer buffer, int entryCount, int dataOffset) {
+        this.file = file;
+        this.buffer = buffer;
+        this.entryCount = entryCount;
+        this.dataOffset = dataOffset;
+    }
+
+    public static GazetteerIndex open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Dimensione gazetteer non valida: " + size + " byte");
+            }
+
+            // Il mapping resta valido anche dopo la chiusura del channel
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Formato gazetteer non riconosciuto: " + file.getName());
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Gazetteer creato con una versione precedente, va reimportato: " + file.getName());
+            }
+
+            int entryCount = buffer.getInt(8);
+            int dataOffset = buffer.getInt(12);
+            if (entryCount < 0 || dataOffset < HEADER_SIZE + (long) entryCount * 4 || dataOffset > size) {
+                throw new IOException("Header gazetteer corrotto: " + file.getName());
+            }
+
+            return new GazetteerIndex(file, buffer, entryCount, dataOffset);
+        }
+    }
+
+    /**
+     * Ricerca esatta della chiave normalizzata, O(log n) direttamente sul file mappato
+     */
+    public CityData find(String key) {
+        int index = indexOf(key.getBytes(StandardCharsets.UTF_8));
+        return index >= 0 ? readCity(recordOffset(index)) : null;
+    }
+
+    public boolean contains(String key) {
+        return indexOf(key.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    /**
+     * Entry con chiave che inizia per prefix, al massimo maxResults, in ordine di chiave.
+     * Ogni elemento è {indice, popolazione}.
+     */
+    public List<int[]> prefixRange(String prefix, int maxResults) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        int index = indexOf(key);
+        int start = index >= 0 ? index : -(index + 1);
+
+        List<int[]> result = new ArrayList<>();
+        for (int i = start; i < entryCount && result.size() < maxResults; i++) {
+            int offset = recordOffset(i);
+            if (!startsWith(offset, key)) break;
+            result.add(new int[]{i, readPopulation(offset)});
+        }
+        return result;
+    }
+
+    public String keyAt(int index) {
+        return readString(recordOffset(index));
+    }
+
+    public String nameAt(int index) {
+        return readString(skipString(recordOffset(index)));
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFileSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Posizione della chiave nella tabella, oppure -(punto di inserimento) - 1
+     */
+    int indexOf(byte[] key) {
+        int low = 0;
+        int high = entryCount - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKey(recordOffset(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    int recordOffset(int index) {
+        return dataOffset + buffer.getInt(HEADER_SIZE + index * 4);
+    }
+
+    int readPopulation(int offset) {
+        int pos = skipString(skipString(offset));
+        return buffer.getInt(pos + 8);
+    }
+
+    CityData readCity(int offset) {
+        int namePos = skipString(offset);
+        String name = readString(namePos);
+        int pos = skipString(namePos);
+        double lat = buffer.getInt(pos) / COORDINATE_SCALE;
+        double lon = buffer.getInt(pos + 4) / COORDINATE_SCALE;
+        return new CityData(name, lat, lon);
+    }
+
+    private int compareKey(int offset, byte[] key) {
+        int length = Short.toUnsignedInt(buffer.getShort(offset));
+        int start = offset + 2;
+        int n = Math.min(length, key.length);
+
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buffer.get(start + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private boolean startsWith(int offset, byte[] prefix) {
+        int length = Short.toUnsignedInt(buffer.getShort(offset));
+        if (length < prefix.length) return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + 2 + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private int skipString(int offset) {
+        return offset + 2 + Short.toUnsignedInt(buffer.getShort(offset));
+    }
+
+    private String readString(int offset) {
+        int length = Short.toUnsignedInt(buffer.getShort(offset));
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,142 @@
+package it.samuconfaa.locateCities.database;
+
+import it.samuconfaa.locateCities.data.CityData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot binario dei punti di atterraggio verificati.
+ *
+ * Formato: header (magic + versione formato + versione proiezione + numero record) seguito da
+ * record [chiave][x][y][z] e dal CRC32 di tutto ciò che segue l'header.
+ * Il file viene sempre riscritto per intero tramite file temporaneo e rename atomico:
+ * le entry sono poche e cambiano di rado, un log append-only non serve.
+ * Uno snapshot di un'altra proiezione (origine o scala diverse) viene ignorato.
+ */
+public class LandingSpotStore {
+
+    private static final int MAGIC = 0x4C4C5331; // "LLS1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int MAX_STRING_BYTES = 1024;
+
+    private final File file;
+    private final Logger logger;
+
+    public LandingSpotStore(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Entry salvate per la proiezione indicata; vuoto se il file è di un'altra proiezione o corrotto
+     */
+    public synchronized Map<String, CityData.MinecraftCoordinates> load(long projectionVersion) throws IOException {
+        Map<String, CityData.MinecraftCoordinates> spots = new LinkedHashMap<>();
+        if (!file.exists() || file.length() < HEADER_SIZE + 4) {
+            return spots;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Formato cache atterraggi non riconosciuto: " + file.getName());
+        }
+
+        long storedProjection = buffer.getLong();
+        int count = buffer.getInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, buffer.limit() - HEADER_SIZE - 4);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            logger.warning("Cache atterraggi corrotta, verrà ricostruita: " + file.getName());
+            return spots;
+        }
+
+        // Origine, scala o inversioni cambiate: le coordinate salvate non valgono più
+        if (storedProjection != projectionVersion) {
+            return spots;
+        }
+
+        for (int i = 0; i < count; i++) {
+            String key = readString(buffer);
+            int x = buffer.getInt();
+            int y = buffer.getInt();
+            int z = buffer.getInt();
+            spots.put(key, new CityData.MinecraftCoordinates(x, z, y));
+        }
+
+        return spots;
+    }
+
+    /**
+     * Riscrive lo snapshot tramite file temporaneo e rename atomico
+     */
+    public synchronized void save(long projectionVersion, Map<String, CityData.MinecraftCoordinates> spots) throws IOException {
+        byte[][] keys = new byte[spots.size()][];
+        int total = HEADER_SIZE;
+
+        int i = 0;
+        for (String key : spots.keySet()) {
+            keys[i] = truncate(key.getBytes(StandardCharsets.UTF_8));
+            total += 2 + keys[i].length + 12;
+            i++;
+        }
+        total += 4;
+
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(projectionVersion).putInt(spots.size());
+
+        i = 0;
+        for (CityData.MinecraftCoordinates spot : spots.values()) {
+            buffer.putShort((short) keys[i].length).put(keys[i]);
+            buffer.putInt(spot.getX()).putInt(spot.getY()).putInt(spot.getZ());
+            i++;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, buffer.position() - HEADER_SIZE);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] truncate(byte[] bytes) {
+        if (bytes.length <= MAX_STRING_BYTES) return bytes;
+        byte[] truncated = new byte[MAX_STRING_BYTES];
+        System.arraycopy(bytes, 0, truncated, 0, MAX_STRING_BYTES);
+        return truncated;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
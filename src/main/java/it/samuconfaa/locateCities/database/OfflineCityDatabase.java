@@ -1,7 +1,12 @@
 package it.samuconfaa.locateCities.database;
 
 import it.samuconfaa.locateCities.data.CityData;
+import it.samuconfaa.locateCities.utils.CityNames;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -9,6 +14,13 @@ public class OfflineCityDatabase {
 
     private static final Map<String, CityData> OFFLINE_CITIES = new HashMap<>();
 
+    // Gazetteer esteso su file (opzionale), consultato prima delle città integrate
+    private static volatile GazetteerIndex gazetteer;
+
+    // Ogni import scrive un file versionato: quello mappato non viene mai sovrascritto
+    private static final String VERSIONED_PREFIX = "gazetteer-";
+    private static final String VERSIONED_SUFFIX = ".bin";
+
     static {
         // Città italiane principali
         addCity("roma", 41.9028, 12.4964);
@@ -73,18 +85,116 @@ public class OfflineCityDatabase {
     }
 
     private static void addCity(String name, double lat, double lon) {
-        OFFLINE_CITIES.put(name.toLowerCase(), new CityData(name, lat, lon));
+        OFFLINE_CITIES.put(CityNames.canonicalKey(name), new CityData(capitalize(name), lat, lon));
+    }
+
+    // "reggio calabria" -> "Reggio Calabria"
+    private static String capitalize(String name) {
+        StringBuilder result = new StringBuilder(name.length());
+        boolean upper = true;
+        for (char c : name.toCharArray()) {
+            result.append(upper ? Character.toUpperCase(c) : c);
+            upper = c == ' ';
+        }
+        return result.toString();
+    }
+
+    public static Collection<CityData> getBuiltInCities() {
+        return Collections.unmodifiableCollection(OFFLINE_CITIES.values());
+    }
+
+    /**
+     * Apre il gazetteer binario (vedi {@link GazetteerIndex}); se il file non esiste
+     * restano disponibili solo le città integrate
+     */
+    public static void loadGazetteer(File file) throws IOException {
+        gazetteer = file.exists() ? GazetteerIndex.open(file) : null;
+    }
+
+    public static void unloadGazetteer() {
+        gazetteer = null;
+    }
+
+    /**
+     * Gazetteer da aprire: l'ultimo importato (gazetteer-&lt;versione&gt;.bin), altrimenti il file base
+     */
+    public static File resolveGazetteerFile(File baseFile) {
+        File latest = baseFile;
+        long latestVersion = -1;
+        for (File candidate : versionedFiles(baseFile)) {
+            long version = parseVersion(candidate);
+            if (version > latestVersion) {
+                latest = candidate;
+                latestVersion = version;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Nuovo file per un import, successivo a tutte le versioni presenti
+     */
+    public static File nextGazetteerFile(File baseFile) {
+        long version = System.currentTimeMillis();
+        for (File candidate : versionedFiles(baseFile)) {
+            version = Math.max(version, parseVersion(candidate) + 1);
+        }
+        return new File(baseFile.getAbsoluteFile().getParentFile(), VERSIONED_PREFIX + version + VERSIONED_SUFFIX);
+    }
+
+    /**
+     * Elimina le versioni diverse da quella in uso. Un file ancora mappato può non essere
+     * eliminabile (Windows): resta su disco fino al prossimo avvio
+     */
+    public static int deleteStaleGazetteers(File baseFile, File current) {
+        int deleted = 0;
+        for (File candidate : versionedFiles(baseFile)) {
+            if (!candidate.equals(current) && candidate.delete()) deleted++;
+        }
+        if (!baseFile.equals(current) && baseFile.exists() && baseFile.delete()) deleted++;
+        return deleted;
+    }
+
+    private static File[] versionedFiles(File baseFile) {
+        File folder = baseFile.getAbsoluteFile().getParentFile();
+        File[] files = folder != null ? folder.listFiles((dir, name) -> parseVersion(new File(dir, name)) >= 0) : null;
+        return files != null ? files : new File[0];
+    }
+
+    private static long parseVersion(File file) {
+        String name = file.getName();
+        if (!name.startsWith(VERSIONED_PREFIX) || !name.endsWith(VERSIONED_SUFFIX)) return -1;
+        try {
+            return Long.parseLong(name.substring(VERSIONED_PREFIX.length(), name.length() - VERSIONED_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static GazetteerIndex getGazetteer() {
+        return gazetteer;
     }
 
     public static CityData findCity(String cityName) {
-        return OFFLINE_CITIES.get(cityName.toLowerCase().trim());
+        String key = CityNames.canonicalKey(cityName);
+
+        GazetteerIndex index = gazetteer;
+        if (index != null) {
+            CityData found = index.find(key);
+            if (found != null) return found;
+        }
+        return OFFLINE_CITIES.get(key);
     }
 
     public static boolean hasCity(String cityName) {
-        return OFFLINE_CITIES.containsKey(cityName.toLowerCase().trim());
+        String key = CityNames.canonicalKey(cityName);
+
+        GazetteerIndex index = gazetteer;
+        return (index != null && index.contains(key)) || OFFLINE_CITIES.containsKey(key);
     }
 
     public static int getCityCount() {
-        return OFFLINE_CITIES.size();
+        GazetteerIndex index = gazetteer;
+        return OFFLINE_CITIES.size() + (index != null ? index.size() : 0);
     }
 }
\ No newline at end of file
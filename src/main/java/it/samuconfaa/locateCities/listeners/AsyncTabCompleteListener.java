@@ -0,0 +1,109 @@
+package it.samuconfaa.locateCities.listeners;
+
+import com.destroystokyo.paper.event.server.AsyncTabCompleteEvent;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tab completion asincrono su Paper: i suggerimenti di città, giocatori e mondi
+ * vengono calcolati fuori dal main thread. Su server senza AsyncTabCompleteEvent
+ * restano attivi i TabCompleter registrati sui comandi.
+ */
+public class AsyncTabCompleteListener implements Listener {
+
+    private static final int MAX_COMPLETIONS = 50;
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Associa nome, alias e nome con prefisso plugin del comando al suo completer
+     */
+    public void register(PluginCommand command, TabCompleter completer, String permission, String pluginPrefix) {
+        Route route = new Route(command, completer, permission);
+
+        List<String> labels = new ArrayList<>();
+        labels.add(command.getName());
+        if (command.getAliases() != null) {
+            labels.addAll(command.getAliases());
+        }
+
+        for (String label : labels) {
+            String key = label.toLowerCase(Locale.ROOT);
+            routes.put(key, route);
+            routes.put(pluginPrefix + ":" + key, route);
+        }
+    }
+
+    public static boolean isSupported() {
+        try {
+            Class.forName("com.destroystokyo.paper.event.server.AsyncTabCompleteEvent");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
+    public void onAsyncTabComplete(AsyncTabCompleteEvent event) {
+        if (!event.isCommand() || event.isHandled()) return;
+
+        String buffer = event.getBuffer();
+        if (buffer.startsWith("/")) {
+            buffer = buffer.substring(1);
+        }
+
+        // Senza spazio si sta ancora scrivendo il nome del comando: lo gestisce il server
+        int space = buffer.indexOf(' ');
+        if (space < 0) return;
+
+        String label = buffer.substring(0, space).toLowerCase(Locale.ROOT);
+        Route route = routes.get(label);
+        if (route == null) return;
+
+        CommandSender sender = event.getSender();
+        if (!sender.hasPermission(route.permission)) {
+            event.setCompletions(Collections.emptyList());
+            event.setHandled(true);
+            return;
+        }
+
+        // split con limite negativo: l'ultimo argomento vuoto ("/citta tp ") va mantenuto
+        String[] args = buffer.substring(space + 1).split(" ", -1);
+        List<String> completions = route.completer.onTabComplete(sender, route.command, label, args);
+
+        // Un altro listener può aver annullato l'evento nel frattempo
+        if (event.isCancelled()) return;
+
+        if (completions == null) {
+            completions = Collections.emptyList();
+        } else if (completions.size() > MAX_COMPLETIONS) {
+            completions = new ArrayList<>(completions.subList(0, MAX_COMPLETIONS));
+        }
+
+        event.setCompletions(completions);
+        event.setHandled(true);
+    }
+
+    private static class Route {
+        final PluginCommand command;
+        final TabCompleter completer;
+        final String permission;
+
+        Route(PluginCommand command, TabCompleter completer, String permission) {
+            this.command = command;
+            this.completer = completer;
+            this.permission = permission;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package it.samuconfaa.locateCities.listeners;
+
+import it.samuconfaa.locateCities.database.DatabaseManager;
+import it.samuconfaa.locateCities.managers.PermissionCache;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Mantiene l'indice cooldown e i permessi in cache allineati ai giocatori online
+ */
+public class PlayerConnectionListener implements Listener {
+
+    private final DatabaseManager databaseManager;
+    private final PermissionCache permissionCache;
+
+    public PlayerConnectionListener(DatabaseManager databaseManager, PermissionCache permissionCache) {
+        this.databaseManager = databaseManager;
+        this.permissionCache = permissionCache;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        // Precarica in background: il primo /citta tp non tocca SQLite
+        databaseManager.warmCooldownIndexAsync(event.getPlayer().getName());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        databaseManager.evictCooldownIndex(event.getPlayer().getName());
+        permissionCache.invalidate(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        // I permessi possono dipendere dal mondo
+        permissionCache.invalidate(event.getPlayer().getUniqueId());
+    }
+}
\ No newline at end of file
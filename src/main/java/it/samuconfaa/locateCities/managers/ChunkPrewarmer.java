@@ -0,0 +1,253 @@
+package it.samuconfaa.locateCities.managers;
+
+import it.samuconfaa.locateCities.LocateCities;
+import it.samuconfaa.locateCities.data.CityData;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Pre-generazione dei chunk attorno alle città più cercate.
+ *
+ * Periodicamente le città in testa alle statistiche vengono risolte (geocoding in
+ * background) e proiettate nel mondo target; i chunk entro il raggio configurato vengono
+ * accodati e richiesti con {@code getChunkAtAsync}, pochi per tick, così generazione e
+ * caricamento avvengono fuori dal main thread prima che un giocatore ci arrivi.
+ * Con keep_loaded i chunk restano caricati tramite ticket del plugin, rilasciati quando
+ * la città esce dalla classifica.
+ *
+ * Richiede Paper: senza caricamento asincrono dei chunk il pre-warming non viene avviato.
+ */
+public class ChunkPrewarmer {
+
+    // Richieste di caricamento contemporanee al massimo, oltre chunks_per_tick
+    private static final int MAX_IN_FLIGHT = 16;
+    // Primo aggiornamento dopo l'avvio, quando le statistiche sono già caricate
+    private static final long INITIAL_DELAY_TICKS = 20L * 60L;
+    // getChunkAtAsync esiste solo su Paper
+    private static final boolean ASYNC_CHUNKS = detectAsyncChunks();
+
+    private final LocateCities plugin;
+    private final CityManager cityManager;
+    private final StatisticsManager statisticsManager;
+    private final ConfigManager configManager;
+
+    // Accessi solo dal main thread
+    private final Set<Long> ticketedChunks = new HashSet<>();
+    private String ticketWorldName;
+
+    private final ConcurrentLinkedQueue<PendingChunk> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    private final AtomicLong chunksWarmed = new AtomicLong(0);
+    private final AtomicLong chunksFailed = new AtomicLong(0);
+
+    private BukkitTask refreshTask;
+    private BukkitTask pumpTask;
+    private volatile boolean running = false;
+
+    public ChunkPrewarmer(LocateCities plugin, CityManager cityManager,
+                          StatisticsManager statisticsManager, ConfigManager configManager) {
+        this.plugin = plugin;
+        this.cityManager = cityManager;
+        this.statisticsManager = statisticsManager;
+        this.configManager = configManager;
+    }
+
+    public static boolean isSupported() {
+        return ASYNC_CHUNKS;
+    }
+
+    private static boolean detectAsyncChunks() {
+        try {
+            World.class.getMethod("getChunkAtAsync", int.class, int.class);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+
+        long refreshTicks = 20L * 60L * configManager.getChunkPrewarmRefreshMinutes();
+        refreshTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+                this::refresh, INITIAL_DELAY_TICKS, refreshTicks);
+        pumpTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::pump, 1L, 1L);
+    }
+
+    /**
+     * Risolve le città più cercate e accoda i chunk da preparare (thread async)
+     */
+    private void refresh() {
+        if (!running) return;
+
+        try {
+            int radius = configManager.getChunkPrewarmRadius();
+            List<CompletableFuture<CityData>> lookups = new ArrayList<>();
+            for (Map.Entry<String, Integer> top : statisticsManager.getTopCities(configManager.getChunkPrewarmTopCities())) {
+                lookups.add(cityManager.findCity(top.getKey(), GeocodingScheduler.Priority.BACKGROUND)
+                        .exceptionally(throwable -> null));
+            }
+
+            CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).thenRun(() -> {
+                // Ordine di popolarità: i chunk delle prime città vengono richiesti per primi
+                Set<Long> wanted = new LinkedHashSet<>();
+                ConfigManager.Settings settings = configManager.getSettings();
+                for (CompletableFuture<CityData> lookup : lookups) {
+                    CityData city = lookup.join();
+                    if (city == null) continue;
+
+                    CityData.MinecraftCoordinates coords = cityManager.projectCity(city, settings);
+                    int centerX = coords.getX() >> 4;
+                    int centerZ = coords.getZ() >> 4;
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        for (int dz = -radius; dz <= radius; dz++) {
+                            wanted.add(chunkKey(centerX + dx, centerZ + dz));
+                        }
+                    }
+                }
+
+                plugin.getServer().getScheduler().runTask(plugin, () -> apply(wanted));
+            });
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Errore durante l'aggiornamento del pre-warming chunk", e);
+        }
+    }
+
+    /**
+     * Rilascia i ticket non più necessari e accoda i nuovi chunk (main thread)
+     */
+    private void apply(Set<Long> wanted) {
+        if (!running) return;
+
+        String worldName = configManager.getTargetWorldName();
+        World world = plugin.getServer().getWorld(worldName);
+        if (world == null) {
+            plugin.getLogger().warning("Pre-warming chunk: mondo target '" + worldName + "' non trovato");
+            return;
+        }
+
+        // Mondo target cambiato: i ticket del vecchio mondo non servono più
+        if (ticketWorldName != null && !ticketWorldName.equals(worldName)) {
+            releaseTickets();
+        }
+
+        boolean keepLoaded = configManager.isChunkPrewarmKeepLoaded();
+        for (Long key : new ArrayList<>(ticketedChunks)) {
+            if (!keepLoaded || !wanted.contains(key)) {
+                world.removePluginChunkTicket(chunkX(key), chunkZ(key), plugin);
+                ticketedChunks.remove(key);
+            }
+        }
+
+        queue.clear();
+        for (Long key : wanted) {
+            if (!ticketedChunks.contains(key)) {
+                queue.offer(new PendingChunk(worldName, key));
+            }
+        }
+    }
+
+    /**
+     * Avvia al massimo chunks_per_tick caricamenti asincroni (main thread, ogni tick)
+     */
+    private void pump() {
+        int budget = configManager.getChunkPrewarmChunksPerTick();
+
+        while (budget-- > 0 && inFlight.get() < MAX_IN_FLIGHT) {
+            PendingChunk pending = queue.poll();
+            if (pending == null) return;
+
+            World world = plugin.getServer().getWorld(pending.worldName);
+            if (world == null) continue;
+
+            int x = chunkX(pending.key);
+            int z = chunkZ(pending.key);
+
+            inFlight.incrementAndGet();
+            world.getChunkAtAsync(x, z).whenComplete((chunk, throwable) -> {
+                inFlight.decrementAndGet();
+                if (throwable != null || chunk == null) {
+                    chunksFailed.incrementAndGet();
+                    return;
+                }
+                chunksWarmed.incrementAndGet();
+
+                // Il chunk è già caricato: il ticket non causa caricamenti sincroni
+                if (running && configManager.isChunkPrewarmKeepLoaded()) {
+                    plugin.getServer().getScheduler().runTask(plugin, () -> {
+                        if (!running || !pending.worldName.equals(configManager.getTargetWorldName())) return;
+                        if (world.addPluginChunkTicket(x, z, plugin)) {
+                            ticketedChunks.add(pending.key);
+                            ticketWorldName = pending.worldName;
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private void releaseTickets() {
+        World world = ticketWorldName != null ? plugin.getServer().getWorld(ticketWorldName) : null;
+        if (world != null) {
+            world.removePluginChunkTickets(plugin);
+        }
+        ticketedChunks.clear();
+        ticketWorldName = null;
+    }
+
+    public void shutdown() {
+        running = false;
+
+        if (refreshTask != null) refreshTask.cancel();
+        if (pumpTask != null) pumpTask.cancel();
+        queue.clear();
+
+        // Rilascia anche eventuali ticket aggiunti prima di un cambio di mondo
+        for (World world : plugin.getServer().getWorlds()) {
+            world.removePluginChunkTickets(plugin);
+        }
+        ticketedChunks.clear();
+        ticketWorldName = null;
+    }
+
+    public String getStats() {
+        return String.format("Chunk preparati: %d, falliti: %d, in coda: %d, mantenuti: %d",
+                chunksWarmed.get(), chunksFailed.get(), queue.size(), ticketedChunks.size());
+    }
+
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private static int chunkX(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int chunkZ(long key) {
+        return (int) key;
+    }
+
+    private static class PendingChunk {
+        final String worldName;
+        final long key;
+
+        PendingChunk(String worldName, long key) {
+            this.worldName = worldName;
+            this.key = key;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,291 @@
+package it.samuconfaa.locateCities.managers;
+
+import it.samuconfaa.locateCities.data.CityData;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache geocoding con TTL per entry e eviction Segmented LRU.
+ *
+ * Le chiavi sono distribuite su segmenti indipendenti, ognuno protetto dal proprio lock:
+ * nessuna operazione blocca l'intera cache. Ogni segmento ha una zona "probation"
+ * (nuove entry) e una "protected" (entry lette almeno due volte), entrambe in ordine
+ * di accesso: l'eviction rimuove in O(1) la entry meno recente della probation,
+ * quindi le città popolari restano in cache anche con molte ricerche occasionali.
+ */
+public class CityCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    // Con segmenti più piccoli la zona protetta lascerebbe spazio solo alla entry appena inserita
+    private static final int MIN_SEGMENT_SIZE = 4;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int maxSize;
+    private final long ttlMillis;
+
+    // Metriche
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong expirations = new AtomicLong(0);
+    private final AtomicLong loads = new AtomicLong(0);
+    private final AtomicLong totalLoadNanos = new AtomicLong(0);
+
+    public CityCache(int maxSize, long ttlMillis) {
+        this.maxSize = Math.max(maxSize, 1);
+        this.ttlMillis = ttlMillis;
+
+        // Potenza di due (maschera sull'hash), con almeno MIN_SEGMENT_SIZE entry per segmento
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && this.maxSize / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+            segmentCount *= 2;
+        }
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+
+        // Il resto va ai primi segmenti: la capacità totale è esattamente maxSize
+        int perSegment = this.maxSize / segmentCount;
+        int remainder = this.maxSize % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(perSegment + (i < remainder ? 1 : 0));
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    /**
+     * Restituisce la città in cache, o null se assente o scaduta
+     */
+    public CityData get(String key) {
+        CityData data = segmentFor(key).get(key, System.currentTimeMillis());
+        if (data != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return data;
+    }
+
+    /**
+     * Come get, ma senza aggiornare le metriche hit/miss
+     */
+    public CityData peek(String key) {
+        return segmentFor(key).get(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Inserisce con TTL calcolato dall'istante di inserimento
+     */
+    public void put(String key, CityData cityData) {
+        put(key, cityData, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * Inserisce con scadenza esplicita, senza sovrascrivere entry più recenti
+     * (usato al caricamento dal disco)
+     */
+    public void putIfAbsent(String key, CityData cityData, long expirationTime) {
+        if (cityData == null) return;
+        segmentFor(key).putIfAbsent(key, new Entry(cityData, expirationTime));
+    }
+
+    private void put(String key, CityData cityData, long expirationTime) {
+        if (cityData == null) return;
+        segmentFor(key).put(key, new Entry(cityData, expirationTime));
+    }
+
+    /**
+     * Registra il tempo impiegato a risolvere un miss (API o database offline)
+     */
+    public void recordLoad(long nanos) {
+        loads.incrementAndGet();
+        totalLoadNanos.addAndGet(nanos);
+    }
+
+    public int removeExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Segment segment : segments) {
+            removed += segment.removeExpired(now);
+        }
+        return removed;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Copia delle entry valide, per la compattazione del log su disco
+     */
+    public Map<String, CityData> snapshot() {
+        long now = System.currentTimeMillis();
+        Map<String, CityData> result = new LinkedHashMap<>();
+        for (Segment segment : segments) {
+            segment.copyLive(result, now);
+        }
+        return result;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long m = misses.get();
+        return h + m > 0 ? (double) h / (h + m) * 100 : 0.0;
+    }
+
+    public double getAverageLoadMillis() {
+        long count = loads.get();
+        return count > 0 ? totalLoadNanos.get() / 1_000_000.0 / count : 0.0;
+    }
+
+    public String getStats() {
+        return String.format("%d/%d entry, hit %.1f%% (%d/%d), eviction %d, scadute %d, load medio %.1fms (%d)",
+                size(), maxSize, getHitRate(), hits.get(), hits.get() + misses.get(),
+                evictions.get(), expirations.get(), getAverageLoadMillis(), loads.get());
+    }
+
+    private static class Entry {
+        final CityData cityData;
+        final long expirationTime;
+
+        Entry(CityData cityData, long expirationTime) {
+            this.cityData = cityData;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired(long now) {
+            return now > expirationTime;
+        }
+    }
+
+    private class Segment {
+        private final int capacity;
+        private final int protectedCapacity;
+
+        // accessOrder = true: la prima entry è sempre la meno recente
+        private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, Entry> protectedZone = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(int capacity) {
+            this.capacity = Math.max(capacity, 1);
+            // Almeno un posto resta alla probation: una nuova entry non può espellere sé stessa
+            this.protectedCapacity = Math.min((int) (this.capacity * PROTECTED_RATIO), this.capacity - 1);
+        }
+
+        synchronized CityData get(String key, long now) {
+            Entry entry = protectedZone.get(key);
+            if (entry != null) {
+                if (entry.isExpired(now)) {
+                    protectedZone.remove(key);
+                    expirations.incrementAndGet();
+                    return null;
+                }
+                return entry.cityData;
+            }
+
+            entry = probation.remove(key);
+            if (entry == null) return null;
+
+            if (entry.isExpired(now)) {
+                expirations.incrementAndGet();
+                return null;
+            }
+
+            // Secondo accesso: promozione nella zona protetta
+            protectedZone.put(key, entry);
+            if (protectedZone.size() > protectedCapacity) {
+                Iterator<Map.Entry<String, Entry>> it = protectedZone.entrySet().iterator();
+                Map.Entry<String, Entry> demoted = it.next();
+                it.remove();
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+            return entry.cityData;
+        }
+
+        synchronized void put(String key, Entry entry) {
+            if (protectedZone.containsKey(key)) {
+                protectedZone.put(key, entry);
+                return;
+            }
+
+            probation.put(key, entry);
+            while (probation.size() + protectedZone.size() > capacity && !probation.isEmpty()) {
+                Iterator<Map.Entry<String, Entry>> it = probation.entrySet().iterator();
+                it.next();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+
+        synchronized void putIfAbsent(String key, Entry entry) {
+            if (probation.containsKey(key) || protectedZone.containsKey(key)) return;
+            put(key, entry);
+        }
+
+        synchronized int removeExpired(long now) {
+            int before = probation.size() + protectedZone.size();
+            probation.values().removeIf(e -> e.isExpired(now));
+            protectedZone.values().removeIf(e -> e.isExpired(now));
+            int removed = before - probation.size() - protectedZone.size();
+            expirations.addAndGet(removed);
+            return removed;
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protectedZone.clear();
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedZone.size();
+        }
+
+        synchronized void copyLive(Map<String, CityData> target, long now) {
+            for (Map.Entry<String, Entry> e : probation.entrySet()) {
+                if (!e.getValue().isExpired(now)) target.put(e.getKey(), e.getValue().cityData);
+            }
+            for (Map.Entry<String, Entry> e : protectedZone.entrySet()) {
+                if (!e.getValue().isExpired(now)) target.put(e.getKey(), e.getValue().cityData);
+            }
+        }
+    }
+}
\ No newline at end of file
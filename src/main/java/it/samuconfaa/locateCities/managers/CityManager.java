@@ -1,8 +1,13 @@
 package it.samuconfaa.locateCities.managers;
 
 import it.samuconfaa.locateCities.LocateCities;
+import it.samuconfaa.locateCities.database.CityCacheLog;
+import it.samuconfaa.locateCities.database.GazetteerIndex;
+import it.samuconfaa.locateCities.database.LandingSpotStore;
 import it.samuconfaa.locateCities.database.OfflineCityDatabase;
 import it.samuconfaa.locateCities.data.CityData;
+import it.samuconfaa.locateCities.utils.CityNames;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.configuration.file.FileConfiguration;
@@ -11,6 +16,9 @@ import org.bukkit.entity.Player;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -21,11 +29,18 @@ public class CityManager {
     public final ConfigManager configManager;
     private final GeocodingService geocodingService;
 
-    // Cache ottimizzata con LRU e TTL
-    private final ConcurrentHashMap<String, CachedCity> cache;
+    // Cache Segmented LRU con TTL per entry
+    private final CityCache cache;
     private final int maxCacheSize;
     private final long cacheLifetime;
 
+    // Ricerche API in corso: richieste concorrenti per la stessa città condividono un solo future
+    private final ConcurrentHashMap<String, CompletableFuture<CityData>> inFlight = new ConcurrentHashMap<>();
+
+    // Indice per il tab completion, ricostruito in background
+    private volatile CompletionIndex completionIndex = CompletionIndex.EMPTY;
+    private volatile FuzzyIndex fuzzyIndex = FuzzyIndex.EMPTY;
+
     // Thread pool dedicato per operazioni I/O
     private final ScheduledExecutorService ioExecutor;
 
@@ -34,25 +49,30 @@ public class CityManager {
     private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
 
     // Metriche performance
-    private final AtomicInteger cacheHits = new AtomicInteger(0);
-    private final AtomicInteger cacheMisses = new AtomicInteger(0);
     private final AtomicInteger apiCalls = new AtomicInteger(0);
+    private final AtomicInteger coalescedRequests = new AtomicInteger(0);
 
-    private final File cacheFile;
+    private final CityCacheLog cacheLog;
+    private final File legacyCacheFile;
     private volatile boolean cacheDirty = false;
 
-    private static final int DEFAULT_MAX_CACHE_SIZE = 500; // Ridotto da 1000
-    private static final long DEFAULT_CACHE_LIFETIME = 86400000L; // 24 ore in ms
-    private static final int CLEANUP_BATCH_SIZE = 50;
+    // Punti di atterraggio verificati, salvati accanto alla cache geocoding
+    private final LandingCache landingCache;
+
+    private static final int MIN_COMPACTION_RECORDS = 1000;
+    private static final long COMPLETION_REBUILD_SECONDS = 60;
+    private static final int COMPLETION_TOP_CITIES = 500;
 
     public CityManager(LocateCities plugin, ConfigManager configManager) {
         this.plugin = plugin;
         this.configManager = configManager;
-        this.geocodingService = new GeocodingService(configManager.getApiTimeout());
+        this.geocodingService = new GeocodingService(configManager.getApiTimeout(),
+                configManager.getGeocodingRate(), configManager.getGeocodingBurst(),
+                configManager.getGeocodingQueueSize());
 
-        this.maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
-        this.cacheLifetime = DEFAULT_CACHE_LIFETIME;
-        this.cache = new ConcurrentHashMap<>(maxCacheSize / 4, 0.75f, 4);
+        this.maxCacheSize = configManager.getMaxCacheSize();
+        this.cacheLifetime = TimeUnit.HOURS.toMillis(configManager.getCacheDurationHours());
+        this.cache = new CityCache(maxCacheSize, cacheLifetime);
         this.pendingSaves = new ConcurrentLinkedQueue<>();
 
         // Thread pool ottimizzato per I/O
@@ -63,74 +83,90 @@ public class CityManager {
             return t;
         });
 
-        this.cacheFile = new File(plugin.getDataFolder(), "city_cache.yml");
+        this.cacheLog = new CityCacheLog(new File(plugin.getDataFolder(), "city_cache.bin"), plugin.getLogger());
+        this.legacyCacheFile = new File(plugin.getDataFolder(), "city_cache.yml");
+        this.landingCache = new LandingCache(
+                new LandingSpotStore(new File(plugin.getDataFolder(), "landing_cache.bin"), plugin.getLogger()),
+                plugin.getLogger(), maxCacheSize, configManager.getSettings().getProjectionVersion());
 
         loadCache();
         scheduleOptimizedTasks();
     }
 
     public CompletableFuture<CityData> findCity(String cityName) {
-        String normalizedName = cityName.toLowerCase().trim();
-
-        // 1. Cache check veloce (O(1))
-        CachedCity cached = cache.get(normalizedName);
-        if (cached != null && !cached.isExpired()) {
-            cacheHits.incrementAndGet();
-            cached.updateLastAccess(); // LRU
-            return CompletableFuture.completedFuture(cached.cityData);
+        return findCity(cityName, GeocodingScheduler.Priority.INTERACTIVE);
+    }
+
+    /**
+     * @param priority corsia verso il geocoder se la città non è in cache né offline
+     */
+    public CompletableFuture<CityData> findCity(String cityName, GeocodingScheduler.Priority priority) {
+        String normalizedName = CityNames.canonicalKey(cityName);
+
+        // 1. Cache check veloce (O(1), lock del solo segmento)
+        CityData cached = cache.get(normalizedName);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
         }
 
-        cacheMisses.incrementAndGet();
+        long loadStart = System.nanoTime();
 
         // 2. Database offline check
         CityData offline = OfflineCityDatabase.findCity(normalizedName);
         if (offline != null) {
+            cache.recordLoad(System.nanoTime() - loadStart);
             putInCache(normalizedName, offline);
             return CompletableFuture.completedFuture(offline);
         }
 
-        // 3. API call asincrona con deduplicazione
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                apiCalls.incrementAndGet();
-
-                // Previeni richieste duplicate simultanee
-                String loadingKey = normalizedName + "_loading";
-                CachedCity inProgress = cache.putIfAbsent(loadingKey,
-                        new CachedCity(null, System.currentTimeMillis() + 30000));
-
-                if (inProgress != null && !inProgress.isExpired()) {
-                    // Attendi brevemente e ricontrolla cache
-                    Thread.sleep(100);
-                    CachedCity completed = cache.get(normalizedName);
-                    if (completed != null && !completed.isExpired()) {
-                        cache.remove(loadingKey);
-                        return completed.cityData;
-                    }
-                }
+        // 3. API call asincrona, una sola per città anche con molte richieste simultanee
+        CompletableFuture<CityData> promise = new CompletableFuture<>();
+        CompletableFuture<CityData> existing = inFlight.putIfAbsent(normalizedName, promise);
+        if (existing != null) {
+            coalescedRequests.incrementAndGet();
+            // copy(): un chiamante non può completare il future condiviso
+            return existing.copy();
+        }
 
-                CityData result = geocodingService.searchCity(normalizedName)
-                        .get(configManager.getApiTimeout() + 5000, TimeUnit.MILLISECONDS);
+        // Una ricerca appena terminata potrebbe aver già popolato la cache
+        CityData justLoaded = cache.peek(normalizedName);
+        if (justLoaded != null) {
+            inFlight.remove(normalizedName, promise);
+            promise.complete(justLoaded);
+            return promise;
+        }
 
-                cache.remove(loadingKey);
-                putInCache(normalizedName, result);
-                return result;
+        apiCalls.incrementAndGet();
+        // Al geocoder va il nome come scritto: la chiave canonica perde accenti e alias
+        geocodingService.searchCity(cityName.trim(), priority)
+                .orTimeout(configManager.getApiTimeout() + 5000L, TimeUnit.MILLISECONDS)
+                .whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        cache.recordLoad(System.nanoTime() - loadStart);
+                        putInCache(normalizedName, result);
+                    }
 
-            } catch (Exception e) {
-                cache.remove(normalizedName + "_loading");
-                throw new CompletionException("Città non trovata: " + cityName, e);
-            }
-        }, ioExecutor);
+                    // Rimozione prima del completamento: i nuovi chiamanti trovano già la cache
+                    inFlight.remove(normalizedName, promise);
+
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable;
+                    if (cause instanceof GeocodingScheduler.BusyException) {
+                        // Risposta "occupato" esplicita, non un errore di città non trovata
+                        promise.completeExceptionally(cause);
+                    } else if (throwable != null) {
+                        promise.completeExceptionally(
+                                new CompletionException("Città non trovata: " + cityName, throwable));
+                    } else {
+                        promise.complete(result);
+                    }
+                });
+
+        return promise;
     }
 
     private void putInCache(String key, CityData cityData) {
-        // Pulizia proattiva se cache troppo piena
-        if (cache.size() >= maxCacheSize) {
-            cleanupCacheLRU();
-        }
-
-        CachedCity cached = new CachedCity(cityData, System.currentTimeMillis() + cacheLifetime);
-        cache.put(key, cached);
+        cache.put(key, cityData);
         cacheDirty = true;
 
         // Batch save asincrono
@@ -138,26 +174,6 @@ public class CityManager {
         scheduleBatchSave();
     }
 
-    private void cleanupCacheLRU() {
-        if (cache.isEmpty()) return;
-
-        // Prima rimuovi elementi scaduti
-        cache.entrySet().removeIf(entry ->
-                entry.getKey().endsWith("_loading") || entry.getValue().isExpired());
-
-        // Se ancora piena, rimuovi elementi LRU
-        if (cache.size() >= maxCacheSize) {
-            int toRemove = Math.max(maxCacheSize / 10, 5);
-
-            cache.entrySet().stream()
-                    .filter(e -> !e.getKey().endsWith("_loading"))
-                    .sorted((e1, e2) -> Long.compare(e1.getValue().lastAccess, e2.getValue().lastAccess))
-                    .limit(toRemove)
-                    .map(entry -> entry.getKey())
-                    .forEach(cache::remove);
-        }
-    }
-
     private void scheduleBatchSave() {
         if (saveScheduled.compareAndSet(false, true)) {
             // Salvataggio batch ogni 30 secondi
@@ -179,73 +195,157 @@ public class CityManager {
                 plugin.getDataFolder().mkdirs();
             }
 
-            FileConfiguration cacheConfig = cacheFile.exists() ?
-                    YamlConfiguration.loadConfiguration(cacheFile) : new YamlConfiguration();
-
-            int saved = 0;
+            // Solo il delta: l'ultima versione di ogni chiave viene accodata al log
+            Map<String, CityData> delta = new LinkedHashMap<>();
             CacheEntry entry;
-
-            // Processa in batch per performance
-            while ((entry = pendingSaves.poll()) != null && saved < CLEANUP_BATCH_SIZE) {
-                CityData cityData = entry.cityData;
-                String key = entry.key;
-
-                cacheConfig.set(key + ".name", cityData.getName());
-                cacheConfig.set(key + ".latitude", cityData.getLatitude());
-                cacheConfig.set(key + ".longitude", cityData.getLongitude());
-                cacheConfig.set(key + ".timestamp", cityData.getTimestamp());
-                saved++;
+            while ((entry = pendingSaves.poll()) != null) {
+                delta.put(entry.key, entry.cityData);
             }
 
-            if (saved > 0) {
-                cacheConfig.save(cacheFile);
+            if (!delta.isEmpty()) {
+                cacheLog.append(delta);
                 cacheDirty = false;
-                plugin.getLogger().fine("Salvate " + saved + " city cache entries");
+                plugin.getLogger().fine("Salvate " + delta.size() + " city cache entries");
             }
 
+            compactIfNeeded();
+
         } catch (IOException e) {
             plugin.getLogger().warning("Errore salvataggio cache batch: " + e.getMessage());
         }
     }
 
-    private void loadCache() {
-        if (!cacheFile.exists()) return;
+    private void compactIfNeeded() throws IOException {
+        // Il log contiene duplicati e entry scadute: compatta quando supera il doppio della cache
+        int threshold = Math.max(maxCacheSize * 2, MIN_COMPACTION_RECORDS);
+        if (cacheLog.getRecordCount() <= threshold) return;
+
+        Map<String, CityData> live = cache.snapshot();
+        int before = cacheLog.getRecordCount();
+        cacheLog.compact(live);
+        plugin.getLogger().fine("Cache log compattato: " + before + " -> " + live.size() + " record");
+    }
 
+    private void loadCache() {
         ioExecutor.execute(() -> {
             try {
-                FileConfiguration cacheConfig = YamlConfiguration.loadConfiguration(cacheFile);
-                int loaded = 0;
+                migrateLegacyCache();
+
+                if (!cacheLog.exists()) return;
 
-                for (String key : cacheConfig.getKeys(false)) {
-                    if (loaded >= maxCacheSize) break;
-
-                    try {
-                        String name = cacheConfig.getString(key + ".name");
-                        double lat = cacheConfig.getDouble(key + ".latitude");
-                        double lon = cacheConfig.getDouble(key + ".longitude");
-                        long timestamp = cacheConfig.getLong(key + ".timestamp");
-
-                        // Solo entry non scadute
-                        if (System.currentTimeMillis() - timestamp < cacheLifetime) {
-                            CityData cityData = new CityData(name, lat, lon, timestamp);
-                            CachedCity cached = new CachedCity(cityData, timestamp + cacheLifetime);
-                            cache.put(key, cached);
-                            loaded++;
-                        }
-                    } catch (Exception e) {
-                        // Skip entry corrotta
+                long now = System.currentTimeMillis();
+                Map<String, CityData> entries = cacheLog.load(now - cacheLifetime);
+
+                // Le entry più recenti sono in coda al log: carica le ultime maxCacheSize
+                int skip = Math.max(0, entries.size() - maxCacheSize);
+                int loaded = 0;
+                for (Map.Entry<String, CityData> entry : entries.entrySet()) {
+                    if (skip > 0) {
+                        skip--;
+                        continue;
                     }
+                    CityData cityData = entry.getValue();
+                    // Le chiavi scritte dalle versioni precedenti non erano canoniche
+                    cache.putIfAbsent(CityNames.canonicalKey(entry.getKey()), cityData,
+                            cityData.getTimestamp() + cacheLifetime);
+                    loaded++;
                 }
 
                 plugin.getLogger().info("Caricate " + loaded + " città dalla cache");
 
+                compactIfNeeded();
+
             } catch (Exception e) {
                 plugin.getLogger().warning("Errore caricamento cache: " + e.getMessage());
             }
         });
+        ioExecutor.execute(landingCache::load);
+    }
+
+    /**
+     * Conversione una tantum del vecchio city_cache.yml nel log binario
+     */
+    private void migrateLegacyCache() {
+        if (!legacyCacheFile.exists() || cacheLog.exists()) return;
+
+        try {
+            FileConfiguration cacheConfig = YamlConfiguration.loadConfiguration(legacyCacheFile);
+            Map<String, CityData> entries = new LinkedHashMap<>();
+
+            for (String key : cacheConfig.getKeys(false)) {
+                try {
+                    String name = cacheConfig.getString(key + ".name");
+                    if (name == null) continue;
+
+                    entries.put(key, new CityData(name,
+                            cacheConfig.getDouble(key + ".latitude"),
+                            cacheConfig.getDouble(key + ".longitude"),
+                            cacheConfig.getLong(key + ".timestamp")));
+                } catch (Exception e) {
+                    // Skip entry corrotta
+                }
+            }
+
+            cacheLog.append(entries);
+
+            File migrated = new File(legacyCacheFile.getParentFile(), legacyCacheFile.getName() + ".migrated");
+            if (!legacyCacheFile.renameTo(migrated)) {
+                plugin.getLogger().warning("Impossibile rinominare " + legacyCacheFile.getName());
+            }
+            plugin.getLogger().info("Migrate " + entries.size() + " città da city_cache.yml al nuovo formato");
+
+        } catch (IOException e) {
+            plugin.getLogger().warning("Errore migrazione cache YAML: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Suggerimenti per il tab completion, i più popolari per primi
+     */
+    public List<String> completeCityName(String prefix, int limit) {
+        return completionIndex.complete(prefix, limit);
+    }
+
+    /**
+     * Nomi simili a una ricerca (errori di battitura), senza chiamate di rete
+     */
+    public List<String> findSimilarCities(String cityName, int limit) {
+        return fuzzyIndex.findSimilar(cityName, limit);
+    }
+
+    public void rebuildCompletionIndex() {
+        CompletionIndex.Builder builder = new CompletionIndex.Builder();
+
+        for (CityData city : OfflineCityDatabase.getBuiltInCities()) {
+            builder.add(city.getName(), 10);
+        }
+
+        for (Map.Entry<String, CityData> entry : cache.snapshot().entrySet()) {
+            builder.add(entry.getKey(), entry.getValue().getName(), 20);
+        }
+
+        StatisticsManager statisticsManager = plugin.getStatisticsManager();
+        if (statisticsManager != null) {
+            for (Map.Entry<String, Integer> top : statisticsManager.getTopCities(COMPLETION_TOP_CITIES)) {
+                builder.add(top.getKey(), null, 20 + top.getValue() * 100);
+            }
+        }
+
+        GazetteerIndex gazetteer = OfflineCityDatabase.getGazetteer();
+        completionIndex = builder.build(gazetteer);
+        fuzzyIndex = FuzzyIndex.build(builder, gazetteer);
     }
 
     private void scheduleOptimizedTasks() {
+        // Indice tab completion: città in cache e statistiche cambiano nel tempo
+        ioExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                rebuildCompletionIndex();
+            } catch (Exception e) {
+                plugin.getLogger().warning("Errore aggiornamento indice completamento: " + e.getMessage());
+            }
+        }, 0, COMPLETION_REBUILD_SECONDS, TimeUnit.SECONDS);
+
         // Cleanup cache ogni 10 minuti (invece di ogni ora)
         plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
                 this::cleanupExpiredCache, 20L * 600L, 20L * 600L);
@@ -255,6 +355,7 @@ public class CityManager {
             if (cacheDirty) {
                 scheduleBatchSave();
             }
+            ioExecutor.execute(landingCache::save);
         }, 20L * 300L, 20L * 300L);
     }
 
@@ -263,11 +364,7 @@ public class CityManager {
     }
 
     private void cleanupExpiredCache() {
-        int before = cache.size();
-        cache.entrySet().removeIf(entry ->
-                entry.getKey().endsWith("_loading") || entry.getValue().isExpired());
-
-        int removed = before - cache.size();
+        int removed = cache.removeExpired();
         if (removed > 0) {
             cacheDirty = true;
             plugin.getLogger().fine("Rimossi " + removed + " elementi scaduti dalla cache");
@@ -275,6 +372,13 @@ public class CityManager {
     }
 
     public Location getMinecraftLocation(CityData cityData, Player player) {
+        return getMinecraftLocationInWorld(cityData, getTargetWorld(player));
+    }
+
+    /**
+     * Mondo di destinazione configurato, con fallback sul mondo principale e poi su quello del giocatore
+     */
+    public World getTargetWorld(Player player) {
         // Ottieni il mondo di destinazione configurato
         String targetWorldName = configManager.getTargetWorldName();
         World targetWorld = plugin.getServer().getWorld(targetWorldName);
@@ -291,27 +395,114 @@ public class CityManager {
             }
         }
 
-        return getMinecraftLocationInWorld(cityData, targetWorld);
+        return targetWorld;
     }
 
+    /**
+     * Punto di atterraggio sicuro (niente acqua, lava o foglie) per la città nel mondo indicato.
+     *
+     * Un punto già verificato arriva dalla cache senza leggere il terreno; altrimenti il chunk
+     * viene caricato in modo asincrono (su Paper) e analizzato una volta sola, su uno snapshot
+     * fuori dal main thread. Il future si completa sul main thread.
+     */
+    public CompletableFuture<Location> resolveLanding(CityData cityData, World world) {
+        // Stesso snapshot per la proiezione e per la versione della cache atterraggi
+        ConfigManager.Settings settings = configManager.getSettings();
+        CityData.MinecraftCoordinates coords = projectCity(cityData, settings);
+        int x = coords.getX();
+        int z = coords.getZ();
+
+        if (!configManager.useTerrainHeight()) {
+            return CompletableFuture.completedFuture(new Location(world, x, coords.getY(), z));
+        }
+
+        String cityKey = CityNames.canonicalKey(cityData.getName());
+        long version = settings.getProjectionVersion();
+        CityData.MinecraftCoordinates cached = landingCache.get(cityKey, world.getName(), version);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(new Location(world, cached.getX(), cached.getY(), cached.getZ()));
+        }
+
+        // Paper completa getChunkAtAsync sul main thread; altrove il caricamento resta sincrono
+        CompletableFuture<Chunk> chunk = ChunkPrewarmer.isSupported()
+                ? world.getChunkAtAsync(x >> 4, z >> 4)
+                : CompletableFuture.completedFuture(world.getChunkAt(x >> 4, z >> 4));
+
+        String worldName = world.getName();
+        int minY = world.getMinHeight();
+        int maxY = world.getMaxHeight();
+
+        // Sul main thread solo la copia dello snapshot; la ricerca a spirale gira in background
+        CompletableFuture<CityData.MinecraftCoordinates> scan = chunk
+                .thenApply(loaded -> loaded.getChunkSnapshot(true, false, false))
+                .thenApplyAsync(snapshot -> {
+                    CityData.MinecraftCoordinates spot = LandingCache.findSafeSpot(snapshot, minY, maxY, x, z);
+                    if (spot == null) {
+                        // Nessuna colonna sicura nel chunk: altezza del terreno, senza memorizzarla
+                        return new CityData.MinecraftCoordinates(x, z, LandingCache.surfaceY(snapshot, x, z));
+                    }
+
+                    landingCache.put(cityKey, worldName, version, spot);
+                    return spot;
+                }, ioExecutor);
+
+        // Esito (anche di errore) riportato sul main thread, dove i chiamanti teletrasportano
+        CompletableFuture<Location> landing = new CompletableFuture<>();
+        scan.whenComplete((spot, throwable) -> plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (throwable != null) {
+                landing.completeExceptionally(throwable);
+            } else {
+                landing.complete(new Location(world, spot.getX(), spot.getY(), spot.getZ()));
+            }
+        }));
+        return landing;
+    }
+
+    /**
+     * Da chiamare quando setorigin, setscale o setworld cambiano la destinazione dei teleport
+     */
+    public void invalidateLandingSpots() {
+        landingCache.invalidate();
+        ioExecutor.execute(landingCache::save);
+    }
+
+    /**
+     * Destinazione calcolata subito, senza caricare chunk: l'altezza del terreno si usa solo se il
+     * chunk è già in memoria, altrimenti y_default. Per i teleport c'è {@link #resolveLanding}
+     */
     public Location getMinecraftLocationInWorld(CityData cityData, World world) {
-        CityData.MinecraftCoordinates coords = cityData.toMinecraftCoordinates(configManager);
+        CityData.MinecraftCoordinates coords = projectCity(cityData);
 
         int x = coords.getX();
         int z = coords.getZ();
         int y = coords.getY();
 
-        // Ottimizzazioni coordinate
-        if (configManager.isInvertX()) x = -x;
-        if (configManager.isInvertZ()) z = -z;
-
-        if (configManager.useTerrainHeight()) {
+        // getHighestBlockYAt su un chunk non caricato lo caricherebbe (o genererebbe) in modo sincrono
+        if (configManager.useTerrainHeight() && world.isChunkLoaded(x >> 4, z >> 4)) {
             y = world.getHighestBlockYAt(x, z) + 1;
         }
 
         return new Location(world, x, y, z);
     }
 
+    /**
+     * Coordinate di destinazione con le inversioni degli assi, senza accedere al mondo
+     */
+    public CityData.MinecraftCoordinates projectCity(CityData cityData) {
+        return projectCity(cityData, configManager.getSettings());
+    }
+
+    /**
+     * Origine, scala e inversioni dallo stesso snapshot: un reload concorrente non le mescola
+     */
+    public CityData.MinecraftCoordinates projectCity(CityData cityData, ConfigManager.Settings settings) {
+        CityData.MinecraftCoordinates coords = cityData.toMinecraftCoordinates(settings);
+
+        int x = settings.isInvertX() ? -coords.getX() : coords.getX();
+        int z = settings.isInvertZ() ? -coords.getZ() : coords.getZ();
+        return new CityData.MinecraftCoordinates(x, z, coords.getY());
+    }
+
     @Deprecated
     public Location getMinecraftLocation(CityData cityData, World world) {
         return getMinecraftLocationInWorld(cityData, world);
@@ -323,9 +514,16 @@ public class CityManager {
     }
 
     public double getCacheHitRate() {
-        int hits = cacheHits.get();
-        int misses = cacheMisses.get();
-        return hits + misses > 0 ? (double) hits / (hits + misses) * 100 : 0.0;
+        return cache.getHitRate();
+    }
+
+    public String getGeocodingStats() {
+        return geocodingService.getUsageStats();
+    }
+
+    public String getCacheStats() {
+        return cache.getStats() + ", API " + apiCalls.get() + ", coalescenti " + coalescedRequests.get()
+                + ", " + landingCache.getStats();
     }
 
     public void clearAllCache() {
@@ -341,8 +539,10 @@ public class CityManager {
 
     // Shutdown cleanup
     public void shutdown() {
+        geocodingService.shutdown();
         savePendingEntries();
         saveCache();
+        landingCache.save();
 
         ioExecutor.shutdown();
         try {
@@ -356,26 +556,6 @@ public class CityManager {
     }
 
     // Classi helper interne
-    private static class CachedCity {
-        final CityData cityData;
-        final long expirationTime;
-        volatile long lastAccess;
-
-        CachedCity(CityData cityData, long expirationTime) {
-            this.cityData = cityData;
-            this.expirationTime = expirationTime;
-            this.lastAccess = System.currentTimeMillis();
-        }
-
-        boolean isExpired() {
-            return System.currentTimeMillis() > expirationTime;
-        }
-
-        void updateLastAccess() {
-            this.lastAccess = System.currentTimeMillis();
-        }
-    }
-
     private static class CacheEntry {
         final String key;
         final CityData cityData;
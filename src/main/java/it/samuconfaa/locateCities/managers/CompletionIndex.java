@@ -0,0 +1,275 @@
+package it.samuconfaa.locateCities.managers;
+
+import it.samuconfaa.locateCities.database.GazetteerIndex;
+import it.samuconfaa.locateCities.utils.CityNames;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indice immutabile per il completamento dei nomi città.
+ *
+ * Le città note al plugin (integrate, in cache e più cercate) stanno in array ordinati
+ * per chiave, con il punteggio di popolarità precalcolato: un prefisso individua con due
+ * binary search l'intervallo di candidati, e una sparse table (massimo di intervallo in O(1))
+ * ne estrae i primi k in ordine di punteggio in O(k log k), qualunque sia l'ampiezza.
+ * Il gazetteer su file viene interrogato direttamente sul mapping, senza copiarlo sull'heap.
+ *
+ * Viene ricostruito periodicamente in background e sostituito con un riferimento volatile.
+ */
+public class CompletionIndex {
+
+    public static final CompletionIndex EMPTY = new Builder().build(null);
+
+    // Record del gazetteer esaminati al massimo per ogni completamento
+    private static final int MAX_GAZETTEER_SCAN = 256;
+
+    private final String[] keys;
+    private final String[] names;
+    private final int[] scores;
+    // best[j][i]: indice con il punteggio più alto in [i, i + 2^j)
+    private final int[][] best;
+    private final GazetteerIndex gazetteer;
+
+    private CompletionIndex(String[] keys, String[] names, int[] scores, GazetteerIndex gazetteer) {
+        this.keys = keys;
+        this.names = names;
+        this.scores = scores;
+        this.gazetteer = gazetteer;
+
+        int levels = keys.length > 0 ? 32 - Integer.numberOfLeadingZeros(keys.length) : 0;
+        this.best = new int[levels][];
+        if (levels > 0) {
+            best[0] = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) best[0][i] = i;
+        }
+        for (int j = 1; j < levels; j++) {
+            int half = 1 << (j - 1);
+            int[] previous = best[j - 1];
+            int[] level = new int[keys.length - (1 << j) + 1];
+            for (int i = 0; i < level.length; i++) {
+                level[i] = better(previous[i], previous[i + half]);
+            }
+            best[j] = level;
+        }
+    }
+
+    /**
+     * Fino a limit nomi che iniziano con il prefisso, i più popolari per primi
+     */
+    public List<String> complete(String prefix, int limit) {
+        // Senza alias: un prefisso non è ancora un nome completo
+        String key = CityNames.foldKey(prefix);
+        if (limit <= 0) return Collections.emptyList();
+
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+
+        int from = lowerBound(key);
+        int to = upperBound(key, from);
+        if (from < to) {
+            completeRange(from, to, limit, result);
+        }
+
+        // Intervallo esaurito: tutte le chiavi locali del prefisso sono già nei risultati
+        if (result.size() < limit && gazetteer != null && !key.isEmpty()) {
+            completeFromGazetteer(key, limit, from, to, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Primi limit nomi di [from, to) per punteggio: heap di sotto-intervalli, ognuno con il
+     * proprio massimo; estratto il massimo, l'intervallo si divide in due attorno a esso
+     */
+    private void completeRange(int from, int to, int limit, List<String> result) {
+        // Ogni estrazione toglie un intervallo e ne aggiunge al massimo due
+        int capacity = Math.min(limit, to - from) + 1;
+        int[] heapFrom = new int[capacity];
+        int[] heapTo = new int[capacity];
+        int[] heapBest = new int[capacity];
+
+        heapFrom[0] = from;
+        heapTo[0] = to;
+        heapBest[0] = rangeBest(from, to);
+        int size = 1;
+
+        while (size > 0 && result.size() < limit) {
+            int top = heapBest[0];
+            int topFrom = heapFrom[0];
+            int topTo = heapTo[0];
+            result.add(names[top]);
+
+            size--;
+            heapFrom[0] = heapFrom[size];
+            heapTo[0] = heapTo[size];
+            heapBest[0] = heapBest[size];
+            siftDown(heapFrom, heapTo, heapBest, size);
+
+            if (topFrom < top) {
+                size = push(heapFrom, heapTo, heapBest, size, topFrom, top);
+            }
+            if (top + 1 < topTo) {
+                size = push(heapFrom, heapTo, heapBest, size, top + 1, topTo);
+            }
+        }
+    }
+
+    private int push(int[] heapFrom, int[] heapTo, int[] heapBest, int size, int from, int to) {
+        int i = size;
+        int candidate = rangeBest(from, to);
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (better(heapBest[parent], candidate) == heapBest[parent]) break;
+            heapFrom[i] = heapFrom[parent];
+            heapTo[i] = heapTo[parent];
+            heapBest[i] = heapBest[parent];
+            i = parent;
+        }
+        heapFrom[i] = from;
+        heapTo[i] = to;
+        heapBest[i] = candidate;
+        return size + 1;
+    }
+
+    private void siftDown(int[] heapFrom, int[] heapTo, int[] heapBest, int size) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) return;
+            int child = left + 1 < size && better(heapBest[left + 1], heapBest[left]) == heapBest[left + 1]
+                    ? left + 1 : left;
+            if (better(heapBest[i], heapBest[child]) == heapBest[i]) return;
+
+            swap(heapFrom, i, child);
+            swap(heapTo, i, child);
+            swap(heapBest, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+
+    /**
+     * Indice con il punteggio più alto in [from, to), O(1) sulla sparse table
+     */
+    private int rangeBest(int from, int to) {
+        int level = 31 - Integer.numberOfLeadingZeros(to - from);
+        return better(best[level][from], best[level][to - (1 << level)]);
+    }
+
+    // A parità di punteggio vince la chiave che viene prima in ordine alfabetico
+    private int better(int a, int b) {
+        if (scores[a] != scores[b]) return scores[a] > scores[b] ? a : b;
+        return Math.min(a, b);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    private void completeFromGazetteer(String key, int limit, int from, int to, List<String> result) {
+        List<int[]> candidates = gazetteer.prefixRange(key, MAX_GAZETTEER_SCAN);
+        // Nel gazetteer la popolarità è la popolazione
+        candidates.sort((a, b) -> Integer.compare(b[1], a[1]));
+
+        for (int[] candidate : candidates) {
+            if (result.size() >= limit) break;
+            // Le chiavi del gazetteer sono uniche; quelle già note al plugin sono nell'intervallo
+            String candidateKey = gazetteer.keyAt(candidate[0]);
+            if (Arrays.binarySearch(keys, from, to, candidateKey) < 0) {
+                result.add(gazetteer.nameAt(candidate[0]));
+            }
+        }
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(String prefix, int from) {
+        int low = from;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Raccoglie i nomi con il loro punteggio; a parità di chiave vince il punteggio più alto
+     */
+    public static class Builder {
+        private final Map<String, String> names = new HashMap<>();
+        private final Map<String, Integer> scores = new HashMap<>();
+
+        public Builder add(String name, int score) {
+            return name == null ? this : add(CityNames.canonicalKey(name), name, score);
+        }
+
+        /**
+         * @param display nome da suggerire; usato solo se corrisponde alla chiave (es. "Città" per "citta")
+         */
+        public Builder add(String key, String display, int score) {
+            if (key == null || key.isEmpty()) return this;
+
+            Integer previous = scores.get(key);
+            if (previous == null || score > previous) {
+                scores.put(key, score);
+            }
+
+            // Preferisce la grafia con maiuscole alla chiave normalizzata
+            String candidate = display != null && CityNames.foldKey(display).equals(key) ? display.trim() : key;
+            String known = names.get(key);
+            if (known == null || (known.equals(key) && !candidate.equals(key))) {
+                names.put(key, candidate);
+            }
+            return this;
+        }
+
+        Map<String, Integer> scores() {
+            return scores;
+        }
+
+        String displayName(String key) {
+            return names.get(key);
+        }
+
+        public CompletionIndex build(GazetteerIndex gazetteer) {
+            String[] keyArray = scores.keySet().toArray(new String[0]);
+            Arrays.sort(keyArray);
+
+            String[] nameArray = new String[keyArray.length];
+            int[] scoreArray = new int[keyArray.length];
+            for (int i = 0; i < keyArray.length; i++) {
+                nameArray[i] = names.get(keyArray[i]);
+                scoreArray[i] = scores.get(keyArray[i]);
+            }
+
+            return new CompletionIndex(keyArray, nameArray, scoreArray, gazetteer);
+        }
+    }
+}
\ No newline at end of file
@@ -1,9 +1,12 @@
 package it.samuconfaa.locateCities.managers;
 
 import it.samuconfaa.locateCities.LocateCities;
-import org.bukkit.ChatColor;
+import it.samuconfaa.locateCities.utils.SecurityUtils;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -14,8 +17,12 @@ public class ConfigManager {
     private FileConfiguration config;
     private final Logger logger;
 
+    // Config validato, ricostruito a ogni reload e sostituito in un colpo solo
+    private volatile Settings settings;
+
     // Pattern per validazione sicura dei messaggi
     private static final Pattern SAFE_MESSAGE_PATTERN = Pattern.compile("^[\\p{L}\\p{N}\\p{P}\\p{Z}\\p{S}&&[^<>]]*$");
+    private static final Pattern ANGLE_BRACKETS = Pattern.compile("[<>]");
     private static final int MAX_MESSAGE_LENGTH = 500;
 
     public ConfigManager(LocateCities plugin) {
@@ -23,6 +30,7 @@ public class ConfigManager {
         this.config = plugin.getConfig();
         this.logger = plugin.getLogger();
         setupDefaults();
+        this.settings = new Settings(this, config);
     }
 
     private void setupDefaults() {
@@ -60,6 +68,23 @@ public class ConfigManager {
         config.addDefault("teleport_permission_system.cooldown_days", 3);
         config.addDefault("teleport_permission_system.allow_others_search_only", true);
 
+        // Performance defaults
+        config.addDefault("performance.max_cache_size", 500);
+        config.addDefault("performance.connection_pool_size", 3);
+        config.addDefault("performance.database_batch_size", 50);
+        config.addDefault("performance.database_batch_timeout", 30);
+        config.addDefault("performance.geocoding_rate", 0.66);
+        config.addDefault("performance.geocoding_burst", 1);
+        config.addDefault("performance.geocoding_queue_size", 20);
+
+        // Pre-generazione chunk delle città più visitate
+        config.addDefault("chunk_prewarm.enabled", false);
+        config.addDefault("chunk_prewarm.top_cities", 10);
+        config.addDefault("chunk_prewarm.radius", 2);
+        config.addDefault("chunk_prewarm.chunks_per_tick", 2);
+        config.addDefault("chunk_prewarm.keep_loaded", false);
+        config.addDefault("chunk_prewarm.refresh_minutes", 30);
+
         // Message defaults - AGGIORNATI per il nuovo sistema
         config.addDefault("messages.searching", "&e🔍 Ricerca di &f{city} &ein corso...");
         config.addDefault("messages.found", "&a📍 &f{city} &asi trova alle coordinate &bX:{x} Z:{z}");
@@ -84,6 +109,7 @@ public class ConfigManager {
         config.addDefault("messages.invalid_scale", "&c❌ Scala non valida!");
         config.addDefault("messages.teleport_only_vip", "§7🔒 Il teletrasporto è riservato ai possessori del PASS MENSILE");
         config.addDefault("messages.error_general", "&c❌ Errore: &f{error}");
+        config.addDefault("messages.did_you_mean", "&e💡 Forse cercavi: &f{suggestions}");
         config.addDefault("messages.teleport_history_header", "&6╔══════════════════════════════════════╗\n&6║&e        📜 CRONOLOGIA TELEPORT 📜       &6║\n&6╚══════════════════════════════════════╝");
         config.addDefault("messages.teleport_history_entry", "&f{index}. &b{city} &7- &f{date} &7({days_ago} giorni fa)");
         config.addDefault("messages.teleport_history_empty", "&7Nessun teleport effettuato ancora.");
@@ -95,30 +121,93 @@ public class ConfigManager {
         plugin.saveConfig();
     }
 
-    // Coordinate methods con validazione migliorata
-    public double getLatOrigin() {
-        double lat = config.getDouble("lat_origin");
-        return validateAndClampLatitude(lat);
-    }
+    // Getter: letture dei campi finali dello snapshot corrente
+    public double getLatOrigin() { return settings.latOrigin; }
+    public double getLonOrigin() { return settings.lonOrigin; }
+    public double getScale() { return settings.scale; }
+    public int getDefaultY() { return settings.defaultY; }
+    public String getTargetWorldName() { return settings.targetWorldName; }
+    public boolean isInvertX() { return settings.invertX; }
+    public boolean isInvertZ() { return settings.invertZ; }
 
-    public double getLonOrigin() {
-        double lon = config.getDouble("lon_origin");
-        return validateAndClampLongitude(lon);
-    }
+    // Feature methods
+    public boolean isTeleportEnabled() { return settings.teleportEnabled; }
+    public boolean useTerrainHeight() { return settings.useTerrainHeight; }
 
-    public double getScale() {
-        double scale = config.getDouble("scale");
-        return validateAndClampScale(scale);
+    // API methods
+    public int getApiTimeout() { return settings.apiTimeout; }
+    public int getCacheDurationHours() { return settings.cacheDurationHours; }
+
+    // Economy methods
+    public boolean isEconomyEnabled() { return settings.economyEnabled; }
+    public double getSearchCost() { return settings.searchCost; }
+    public double getTeleportCost() { return settings.teleportCost; }
+    public int getFreeDistance() { return settings.freeDistance; }
+
+    // Rate limiting methods
+    public boolean isRateLimitEnabled() { return settings.rateLimitEnabled; }
+    public int getSearchCooldown() { return settings.searchCooldown; }
+    public int getTeleportCooldown() { return settings.teleportCooldown; }
+
+    // NUOVI METODI: Sistema teleport con permesso specifico
+    public boolean isVipTeleportSystemEnabled() { return settings.vipTeleportSystemEnabled; }
+    public String getVipTeleportPermission() { return settings.vipTeleportPermission; }
+    public int getVipTeleportCooldownDays() { return settings.vipTeleportCooldownDays; }
+    public boolean allowOthersSearchOnly() { return settings.allowOthersSearchOnly; }
+
+    // Performance methods
+    public int getMaxCacheSize() { return settings.maxCacheSize; }
+    public int getConnectionPoolSize() { return settings.connectionPoolSize; }
+    public int getDatabaseBatchSize() { return settings.databaseBatchSize; }
+    public int getDatabaseBatchTimeout() { return settings.databaseBatchTimeout; }
+    public double getGeocodingRate() { return settings.geocodingRate; }
+    public int getGeocodingBurst() { return settings.geocodingBurst; }
+    public int getGeocodingQueueSize() { return settings.geocodingQueueSize; }
+
+    // Chunk prewarm methods
+    public boolean isChunkPrewarmEnabled() { return settings.chunkPrewarmEnabled; }
+    public int getChunkPrewarmTopCities() { return settings.chunkPrewarmTopCities; }
+    public int getChunkPrewarmRadius() { return settings.chunkPrewarmRadius; }
+    public int getChunkPrewarmChunksPerTick() { return settings.chunkPrewarmChunksPerTick; }
+    public boolean isChunkPrewarmKeepLoaded() { return settings.chunkPrewarmKeepLoaded; }
+    public int getChunkPrewarmRefreshMinutes() { return settings.chunkPrewarmRefreshMinutes; }
+
+    // DEPRECATI: Metodi del vecchio sistema cooldown giorni (mantenuti per compatibilità)
+    @Deprecated
+    public boolean isTeleportDayCooldownEnabled() { return settings.teleportDayCooldownEnabled; }
+
+    @Deprecated
+    public int getTeleportCooldownDays() { return settings.teleportCooldownDays; }
+
+    // Message methods: template validati e compilati al caricamento
+    public String getMessage(String key, String... placeholders) {
+        MessageTemplate template = settings.messages.get(key);
+        if (template == null) {
+            template = MessageTemplate.compile("&cMessaggio non trovato: " + key);
+        }
+        return template.render(placeholders);
     }
 
-    public int getDefaultY() {
-        int y = config.getInt("y_default");
-        return validateAndClampY(y);
+    /**
+     * Snapshot corrente: chi legge più valori insieme (es. origine e scala) deve usare
+     * un solo snapshot, così un reload concorrente non mescola vecchi e nuovi valori
+     */
+    public Settings getSettings() {
+        return settings;
     }
 
-    public String getTargetWorldName() {
-        String worldName = config.getString("target_world", "world");
+    /**
+     * Modifica e salva valori del config, pubblicando un unico nuovo snapshot
+     */
+    public synchronized void update(Map<String, Object> values) {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            config.set(entry.getKey(), entry.getValue());
+        }
+        plugin.saveConfig();
+        settings = new Settings(this, config);
+    }
 
+    private String validateWorldName(String worldName) {
         // Validazione e sanitizzazione del nome mondo
         if (worldName == null || worldName.trim().isEmpty()) {
             logger.warning("Nome mondo target non valido nel config, usando 'world'");
@@ -128,7 +217,7 @@ public class ConfigManager {
         worldName = worldName.trim();
 
         // Validazione nome mondo (solo caratteri alfanumerici, underscore e trattini)
-        if (!worldName.matches("^[a-zA-Z0-9_-]{1,50}$")) {
+        if (!SecurityUtils.isValidWorldName(worldName)) {
             logger.warning("Nome mondo target contiene caratteri non validi: " + worldName + ", usando 'world'");
             return "world";
         }
@@ -136,123 +225,6 @@ public class ConfigManager {
         return worldName;
     }
 
-    public boolean isInvertX() {
-        return config.getBoolean("invert_x");
-    }
-
-    public boolean isInvertZ() {
-        return config.getBoolean("invert_z");
-    }
-
-    // Feature methods
-    public boolean isTeleportEnabled() {
-        return config.getBoolean("enable_teleport");
-    }
-
-    public boolean useTerrainHeight() {
-        return config.getBoolean("use_terrain_height");
-    }
-
-    // API methods con validazione
-    public int getApiTimeout() {
-        int timeout = config.getInt("api_timeout");
-        return validateAndClampTimeout(timeout);
-    }
-
-    public int getCacheDurationHours() {
-        int hours = config.getInt("cache_duration_hours");
-        return validateAndClampCacheHours(hours);
-    }
-
-    // Economy methods con validazione
-    public boolean isEconomyEnabled() {
-        return config.getBoolean("economy.enable");
-    }
-
-    public double getSearchCost() {
-        double cost = config.getDouble("economy.search_cost");
-        return validateAndClampCost(cost, "search_cost");
-    }
-
-    public double getTeleportCost() {
-        double cost = config.getDouble("economy.teleport_cost");
-        return validateAndClampCost(cost, "teleport_cost");
-    }
-
-    public int getFreeDistance() {
-        int distance = config.getInt("economy.free_distance");
-        return validateAndClampDistance(distance);
-    }
-
-    // Rate limiting methods con validazione
-    public boolean isRateLimitEnabled() {
-        return config.getBoolean("rate_limit.enabled");
-    }
-
-    public int getSearchCooldown() {
-        int cooldown = config.getInt("rate_limit.search_cooldown");
-        return validateAndClampCooldown(cooldown, "search_cooldown");
-    }
-
-    public int getTeleportCooldown() {
-        int cooldown = config.getInt("rate_limit.teleport_cooldown");
-        return validateAndClampCooldown(cooldown, "teleport_cooldown");
-    }
-
-    // NUOVI METODI: Sistema teleport con permesso specifico
-    public boolean isVipTeleportSystemEnabled() {
-        return config.getBoolean("teleport_permission_system.enabled");
-    }
-
-    public String getVipTeleportPermission() {
-        return config.getString("teleport_permission_system.required_permission", "locatecities.vip.teleport");
-    }
-
-    public int getVipTeleportCooldownDays() {
-        int days = config.getInt("teleport_permission_system.cooldown_days");
-        return validateAndClampDays(days);
-    }
-
-    public boolean allowOthersSearchOnly() {
-        return config.getBoolean("teleport_permission_system.allow_others_search_only");
-    }
-
-    // DEPRECATI: Metodi del vecchio sistema cooldown giorni (mantenuti per compatibilità)
-    @Deprecated
-    public boolean isTeleportDayCooldownEnabled() {
-        return config.getBoolean("teleport_day_cooldown.enabled", false);
-    }
-
-    @Deprecated
-    public int getTeleportCooldownDays() {
-        int days = config.getInt("teleport_day_cooldown.days", 7);
-        return validateAndClampDays(days);
-    }
-
-    // Message methods con validazione di sicurezza
-    public String getMessage(String key, String... placeholders) {
-        String messageKey = "messages." + key;
-        String message = config.getString(messageKey, "&cMessaggio non trovato: " + key);
-
-        // Validazione sicurezza del messaggio
-        message = validateAndSanitizeMessage(message, key);
-
-        // Sostituisci placeholder con validazione
-        for (int i = 0; i < placeholders.length; i += 2) {
-            if (i + 1 < placeholders.length) {
-                String placeholder = placeholders[i];
-                String value = placeholders[i + 1];
-
-                // Validazione placeholder
-                if (isValidPlaceholder(placeholder) && isValidPlaceholderValue(value)) {
-                    message = message.replace("{" + placeholder + "}", value);
-                }
-            }
-        }
-
-        return ChatColor.translateAlternateColorCodes('&', message);
-    }
-
     // Metodi di validazione migliorati
     public boolean validateCoordinates(double lat, double lon) {
         return isValidLatitude(lat) && isValidLongitude(lon);
@@ -355,6 +327,95 @@ public class ConfigManager {
         return days;
     }
 
+    private int validateAndClampCacheSize(int size) {
+        if (size < 16 || size > 100000) {
+            logger.warning("Dimensione cache città non valida nel config: " + size + ", usando 500");
+            return 500;
+        }
+        return size;
+    }
+
+    private int validateAndClampPoolSize(int size) {
+        if (size < 1 || size > 16) {
+            logger.warning("Dimensione connection pool non valida nel config: " + size + ", usando 3");
+            return 3;
+        }
+        return size;
+    }
+
+    private int validateAndClampBatchSize(int size) {
+        if (size < 1 || size > 1000) {
+            logger.warning("Batch size database non valido nel config: " + size + ", usando 50");
+            return 50;
+        }
+        return size;
+    }
+
+    private int validateAndClampBatchTimeout(int seconds) {
+        if (seconds < 1 || seconds > 300) { // 1 secondo - 5 minuti
+            logger.warning("Timeout batch database non valido nel config: " + seconds + ", usando 30s");
+            return 30;
+        }
+        return seconds;
+    }
+
+    private double validateAndClampGeocodingRate(double rate) {
+        // Policy Nominatim: massimo 1 richiesta al secondo
+        if (Double.isNaN(rate) || rate <= 0 || rate > 1.0) {
+            logger.warning("Rate geocoding non valido nel config: " + rate + ", usando 0.66/s");
+            return 0.66;
+        }
+        return rate;
+    }
+
+    private int validateAndClampGeocodingBurst(int burst) {
+        if (burst < 1 || burst > 5) {
+            logger.warning("Burst geocoding non valido nel config: " + burst + ", usando 1");
+            return 1;
+        }
+        return burst;
+    }
+
+    private int validateAndClampGeocodingQueueSize(int size) {
+        if (size < 1 || size > 500) {
+            logger.warning("Coda geocoding non valida nel config: " + size + ", usando 20");
+            return 20;
+        }
+        return size;
+    }
+
+    private int validateAndClampPrewarmTopCities(int count) {
+        if (count < 1 || count > 100) {
+            logger.warning("Numero città prewarm non valido nel config: " + count + ", usando 10");
+            return 10;
+        }
+        return count;
+    }
+
+    private int validateAndClampPrewarmRadius(int radius) {
+        if (radius < 0 || radius > 8) {
+            logger.warning("Raggio prewarm non valido nel config: " + radius + ", usando 2");
+            return 2;
+        }
+        return radius;
+    }
+
+    private int validateAndClampPrewarmChunksPerTick(int chunks) {
+        if (chunks < 1 || chunks > 20) {
+            logger.warning("Chunk per tick prewarm non validi nel config: " + chunks + ", usando 2");
+            return 2;
+        }
+        return chunks;
+    }
+
+    private int validateAndClampPrewarmRefreshMinutes(int minutes) {
+        if (minutes < 5 || minutes > 1440) {
+            logger.warning("Intervallo prewarm non valido nel config: " + minutes + ", usando 30");
+            return 30;
+        }
+        return minutes;
+    }
+
     private String validateAndSanitizeMessage(String message, String key) {
         if (message == null || message.trim().isEmpty()) {
             logger.warning("Messaggio vuoto per chiave: " + key);
@@ -371,42 +432,17 @@ public class ConfigManager {
         if (!SAFE_MESSAGE_PATTERN.matcher(message).matches()) {
             logger.warning("Messaggio contiene caratteri non sicuri per chiave: " + key);
             // Rimuove caratteri non sicuri
-            message = message.replaceAll("[<>]", "");
+            message = ANGLE_BRACKETS.matcher(message).replaceAll("");
         }
 
         return message;
     }
 
-    private boolean isValidPlaceholder(String placeholder) {
-        if (placeholder == null || placeholder.trim().isEmpty()) {
-            return false;
-        }
-
-        // Consenti solo placeholder alfanumerici con underscore
-        return placeholder.matches("^[a-zA-Z0-9_]+$") && placeholder.length() <= 20;
-    }
-
-    private boolean isValidPlaceholderValue(String value) {
-        if (value == null) {
-            return false;
-        }
-
-        // Limita lunghezza e rimuove caratteri potenzialmente pericolosi
-        if (value.length() > 100) {
-            return false;
-        }
-
-        // Evita caratteri HTML/script pericolosi
-        return !value.contains("<script>") &&
-                !value.contains("<iframe>") &&
-                !value.contains("javascript:") &&
-                !value.contains("data:text/html");
-    }
-
-    public void reload() {
+    public synchronized void reload() {
         try {
             plugin.reloadConfig();
             this.config = plugin.getConfig();
+            this.settings = new Settings(this, config);
             logger.info("Configurazione ricaricata con successo");
 
             // Riesegui validazione dopo reload
@@ -482,6 +518,7 @@ public class ConfigManager {
         info.append("Scala: ").append(getScale()).append("\n");
         info.append("Timeout API: ").append(getApiTimeout()).append("ms\n");
         info.append("Cache durata: ").append(getCacheDurationHours()).append("h\n");
+        info.append("Cache max entry: ").append(getMaxCacheSize()).append("\n");
         info.append("Economy abilitata: ").append(isEconomyEnabled()).append("\n");
         info.append("Rate limit abilitato: ").append(isRateLimitEnabled()).append("\n");
         info.append("Sistema VIP teleport abilitato: ").append(isVipTeleportSystemEnabled()).append("\n");
@@ -492,4 +529,130 @@ public class ConfigManager {
         }
         return info.toString();
     }
+
+    /**
+     * Valori del config già validati; immutabile una volta pubblicato
+     */
+    public static final class Settings {
+        private final double latOrigin;
+        private final double lonOrigin;
+        private final double scale;
+        private final int defaultY;
+        private final String targetWorldName;
+        private final boolean invertX;
+        private final boolean invertZ;
+        private final boolean teleportEnabled;
+        private final boolean useTerrainHeight;
+        private final int apiTimeout;
+        private final int cacheDurationHours;
+        private final boolean economyEnabled;
+        private final double searchCost;
+        private final double teleportCost;
+        private final int freeDistance;
+        private final boolean rateLimitEnabled;
+        private final int searchCooldown;
+        private final int teleportCooldown;
+        private final boolean vipTeleportSystemEnabled;
+        private final String vipTeleportPermission;
+        private final int vipTeleportCooldownDays;
+        private final boolean allowOthersSearchOnly;
+        private final int maxCacheSize;
+        private final int connectionPoolSize;
+        private final int databaseBatchSize;
+        private final int databaseBatchTimeout;
+        private final double geocodingRate;
+        private final int geocodingBurst;
+        private final int geocodingQueueSize;
+        private final boolean chunkPrewarmEnabled;
+        private final int chunkPrewarmTopCities;
+        private final int chunkPrewarmRadius;
+        private final int chunkPrewarmChunksPerTick;
+        private final boolean chunkPrewarmKeepLoaded;
+        private final int chunkPrewarmRefreshMinutes;
+        private final boolean teleportDayCooldownEnabled;
+        private final int teleportCooldownDays;
+        private final Map<String, MessageTemplate> messages;
+
+        // Legge e valida tutto il config una sola volta
+        private Settings(ConfigManager v, FileConfiguration config) {
+            this.latOrigin = v.validateAndClampLatitude(config.getDouble("lat_origin"));
+            this.lonOrigin = v.validateAndClampLongitude(config.getDouble("lon_origin"));
+            this.scale = v.validateAndClampScale(config.getDouble("scale"));
+            this.defaultY = v.validateAndClampY(config.getInt("y_default"));
+            this.targetWorldName = v.validateWorldName(config.getString("target_world", "world"));
+            this.invertX = config.getBoolean("invert_x");
+            this.invertZ = config.getBoolean("invert_z");
+
+            this.teleportEnabled = config.getBoolean("enable_teleport");
+            this.useTerrainHeight = config.getBoolean("use_terrain_height");
+
+            this.apiTimeout = v.validateAndClampTimeout(config.getInt("api_timeout"));
+            this.cacheDurationHours = v.validateAndClampCacheHours(config.getInt("cache_duration_hours"));
+
+            this.economyEnabled = config.getBoolean("economy.enable");
+            this.searchCost = v.validateAndClampCost(config.getDouble("economy.search_cost"), "search_cost");
+            this.teleportCost = v.validateAndClampCost(config.getDouble("economy.teleport_cost"), "teleport_cost");
+            this.freeDistance = v.validateAndClampDistance(config.getInt("economy.free_distance"));
+
+            this.rateLimitEnabled = config.getBoolean("rate_limit.enabled");
+            this.searchCooldown = v.validateAndClampCooldown(config.getInt("rate_limit.search_cooldown"), "search_cooldown");
+            this.teleportCooldown = v.validateAndClampCooldown(config.getInt("rate_limit.teleport_cooldown"), "teleport_cooldown");
+
+            this.vipTeleportSystemEnabled = config.getBoolean("teleport_permission_system.enabled");
+            this.vipTeleportPermission = config.getString("teleport_permission_system.required_permission", "locatecities.vip.teleport");
+            this.vipTeleportCooldownDays = v.validateAndClampDays(config.getInt("teleport_permission_system.cooldown_days"));
+            this.allowOthersSearchOnly = config.getBoolean("teleport_permission_system.allow_others_search_only");
+
+            this.maxCacheSize = v.validateAndClampCacheSize(config.getInt("performance.max_cache_size"));
+            this.connectionPoolSize = v.validateAndClampPoolSize(config.getInt("performance.connection_pool_size"));
+            this.databaseBatchSize = v.validateAndClampBatchSize(config.getInt("performance.database_batch_size"));
+            this.databaseBatchTimeout = v.validateAndClampBatchTimeout(config.getInt("performance.database_batch_timeout"));
+            this.geocodingRate = v.validateAndClampGeocodingRate(config.getDouble("performance.geocoding_rate"));
+            this.geocodingBurst = v.validateAndClampGeocodingBurst(config.getInt("performance.geocoding_burst"));
+            this.geocodingQueueSize = v.validateAndClampGeocodingQueueSize(config.getInt("performance.geocoding_queue_size"));
+
+            this.chunkPrewarmEnabled = config.getBoolean("chunk_prewarm.enabled");
+            this.chunkPrewarmTopCities = v.validateAndClampPrewarmTopCities(config.getInt("chunk_prewarm.top_cities"));
+            this.chunkPrewarmRadius = v.validateAndClampPrewarmRadius(config.getInt("chunk_prewarm.radius"));
+            this.chunkPrewarmChunksPerTick = v.validateAndClampPrewarmChunksPerTick(config.getInt("chunk_prewarm.chunks_per_tick"));
+            this.chunkPrewarmKeepLoaded = config.getBoolean("chunk_prewarm.keep_loaded");
+            this.chunkPrewarmRefreshMinutes = v.validateAndClampPrewarmRefreshMinutes(config.getInt("chunk_prewarm.refresh_minutes"));
+
+            this.teleportDayCooldownEnabled = config.getBoolean("teleport_day_cooldown.enabled", false);
+            this.teleportCooldownDays = v.validateAndClampDays(config.getInt("teleport_day_cooldown.days", 7));
+
+            Map<String, MessageTemplate> compiled = new HashMap<>();
+            ConfigurationSection section = config.getConfigurationSection("messages");
+            if (section != null) {
+                for (String key : section.getKeys(false)) {
+                    String message = v.validateAndSanitizeMessage(section.getString(key), key);
+                    compiled.put(key, MessageTemplate.compile(message));
+                }
+            }
+            this.messages = Map.copyOf(compiled);
+        }
+
+        public double getLatOrigin() { return latOrigin; }
+        public double getLonOrigin() { return lonOrigin; }
+        public double getScale() { return scale; }
+        public int getDefaultY() { return defaultY; }
+        public String getTargetWorldName() { return targetWorldName; }
+        public boolean isInvertX() { return invertX; }
+        public boolean isInvertZ() { return invertZ; }
+        public boolean isRateLimitEnabled() { return rateLimitEnabled; }
+        public int getSearchCooldown() { return searchCooldown; }
+        public int getTeleportCooldown() { return teleportCooldown; }
+        public boolean isVipTeleportSystemEnabled() { return vipTeleportSystemEnabled; }
+        public String getVipTeleportPermission() { return vipTeleportPermission; }
+
+        /**
+         * Impronta della proiezione lat/lon -> blocchi: cambia con origine, scala e inversioni
+         */
+        public long getProjectionVersion() {
+            long hash = Double.doubleToLongBits(latOrigin);
+            hash = hash * 31 + Double.doubleToLongBits(lonOrigin);
+            hash = hash * 31 + Double.doubleToLongBits(scale);
+            return hash * 31 + (invertX ? 2 : 0) + (invertZ ? 1 : 0);
+        }
+    }
 }
\ No newline at end of file
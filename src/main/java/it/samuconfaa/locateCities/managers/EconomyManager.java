@@ -2,15 +2,52 @@ package it.samuconfaa.locateCities.managers;
 
 import it.samuconfaa.locateCities.LocateCities;
 import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.RegisteredServiceProvider;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accesso a Vault con prenotazioni in due fasi.
+ *
+ * Prima di un'operazione asincrona (ricerca, caricamento chunk, teleport) l'importo viene
+ * prelevato e tenuto in deposito: nel frattempo il giocatore non può spenderlo altrove.
+ * A operazione conclusa la prenotazione viene catturata (addebito definitivo) o rilasciata
+ * con rimborso; quelle dimenticate scadono e vengono rimborsate.
+ * I rimborsi vengono eseguiti insieme in un unico task sul main thread, uno per giocatore.
+ */
 public class EconomyManager {
 
+    private static final int PENDING = 0;
+    private static final int CAPTURED = 1;
+    private static final int RELEASED = 2;
+
+    // Oltre questo tempo una prenotazione non catturata viene rimborsata
+    private static final long RESERVATION_TIMEOUT_MS = 120_000L;
+    private static final long SWEEP_INTERVAL_MS = 5_000L;
+
     private final LocateCities plugin;
     private Economy economy;
     private boolean economyEnabled;
 
+    // Prenotazioni con denaro in deposito, in attesa di capture o release
+    private final ConcurrentHashMap<Long, Reservation> active = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Reservation> refunds = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicLong nextReservationId = new AtomicLong(0);
+    private final AtomicLong lastSweep = new AtomicLong(0);
+
     public EconomyManager(LocateCities plugin) {
         this.plugin = plugin;
         this.economyEnabled = false;
@@ -41,23 +78,144 @@ public class EconomyManager {
         return economyEnabled && plugin.getConfigManager().isEconomyEnabled();
     }
 
-    public boolean hasEnoughMoney(Player player, double amount) {
-        if (!isEconomyEnabled()) return true;
-        if (player.hasPermission("locatecities.free")) return true;
+    /**
+     * Preleva subito l'importo in deposito (main thread): da qui in poi non può essere speso altrove.
+     *
+     * @return la prenotazione, {@link Reservation#NONE} se non c'è nulla da addebitare,
+     *         null se il prelievo è stato rifiutato
+     */
+    public Reservation reserve(Player player, double amount, String reason) {
+        if (amount <= 0 || !isEconomyEnabled()) return Reservation.NONE;
+        if (plugin.getPermissionCache().get(player).isFree()) return Reservation.NONE;
+
+        long now = System.currentTimeMillis();
+        sweepExpired(now);
+
+        if (!withdraw(player, amount)) {
+            return null;
+        }
 
-        return economy.getBalance(player) >= amount;
+        Reservation reservation = new Reservation(nextReservationId.incrementAndGet(), player, amount, reason,
+                now + RESERVATION_TIMEOUT_MS);
+        active.put(reservation.id, reservation);
+        return reservation;
     }
 
-    public boolean chargeMoney(Player player, double amount, String reason) {
-        if (!isEconomyEnabled()) return true;
-        if (player.hasPermission("locatecities.free")) return true;
+    /**
+     * Conferma l'addebito (main thread). Una prenotazione già scaduta e rimborsata
+     * viene riaddebitata ora.
+     *
+     * @return true se l'importo è addebitato (o non c'era nulla da addebitare),
+     *         false se il denaro non è più disponibile: il servizio non va erogato
+     */
+    public boolean capture(Reservation reservation) {
+        if (reservation == null || reservation == Reservation.NONE) return true;
 
-        if (!hasEnoughMoney(player, amount)) {
-            return false;
+        if (reservation.state.compareAndSet(PENDING, CAPTURED)) {
+            active.remove(reservation.id);
+            return true;
         }
+        if (reservation.state.get() == CAPTURED) return true;
 
-        economy.withdrawPlayer(player, amount);
-        return true;
+        // Scaduta: il rimborso è già partito, serve un nuovo prelievo
+        if (withdraw(reservation.player, reservation.amount)) {
+            reservation.state.set(CAPTURED);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Annulla la prenotazione e rimborsa l'importo, anche dopo capture se il servizio
+     * non è stato erogato (main thread). I rimborsi partono nel prossimo batch.
+     */
+    public void release(Reservation reservation) {
+        if (reservation == null || reservation == Reservation.NONE) return;
+        if (!reservation.state.compareAndSet(PENDING, RELEASED)
+                && !reservation.state.compareAndSet(CAPTURED, RELEASED)) {
+            return;
+        }
+
+        active.remove(reservation.id);
+        refunds.offer(reservation);
+        scheduleFlush();
+    }
+
+    private boolean withdraw(OfflinePlayer player, double amount) {
+        try {
+            EconomyResponse response = economy.withdrawPlayer(player, amount);
+            if (response != null && response.transactionSuccess()) return true;
+
+            plugin.getLogger().fine("Prelievo di " + amount + " rifiutato per " + player.getName() +
+                    (response != null ? ": " + response.errorMessage : ""));
+        } catch (Exception e) {
+            plugin.getLogger().warning("Errore durante il prelievo per " + player.getName() + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            plugin.getServer().getScheduler().runTask(plugin, this::flushRefunds);
+        }
+    }
+
+    /**
+     * Esegue i rimborsi in attesa: uno per giocatore, sommando quelli dello stesso tick
+     */
+    private void flushRefunds() {
+        flushScheduled.set(false);
+
+        Map<UUID, List<Reservation>> batch = new LinkedHashMap<>();
+        Reservation reservation;
+        while ((reservation = refunds.poll()) != null) {
+            batch.computeIfAbsent(reservation.player.getUniqueId(), id -> new ArrayList<>()).add(reservation);
+        }
+
+        for (List<Reservation> reservations : batch.values()) {
+            OfflinePlayer player = reservations.get(0).player;
+
+            double total = 0;
+            for (Reservation r : reservations) total += r.amount;
+
+            try {
+                EconomyResponse response = economy.depositPlayer(player, total);
+                if (response == null || !response.transactionSuccess()) {
+                    plugin.getLogger().warning("Rimborso di " + total + " fallito per " + player.getName() +
+                            (response != null ? ": " + response.errorMessage : ""));
+                }
+            } catch (Exception e) {
+                plugin.getLogger().warning("Errore durante il rimborso per " + player.getName() + ": " + e.getMessage());
+            }
+        }
+
+        sweepExpired(System.currentTimeMillis());
+    }
+
+    private void sweepExpired(long now) {
+        long previous = lastSweep.get();
+        if (now - previous < SWEEP_INTERVAL_MS || !lastSweep.compareAndSet(previous, now)) return;
+
+        for (Reservation reservation : active.values()) {
+            if (reservation.expiresAt <= now) {
+                plugin.getLogger().fine("Prenotazione scaduta (" + reservation.reason + ") per " +
+                        reservation.player.getName() + ", importo rimborsato");
+                release(reservation);
+            }
+        }
+    }
+
+    /**
+     * Rimborsa le prenotazioni aperte ed esegue subito i rimborsi in attesa
+     * (main thread, alla disabilitazione del plugin)
+     */
+    public void shutdown() {
+        if (economy == null) return;
+
+        for (Reservation reservation : active.values()) {
+            release(reservation);
+        }
+        flushRefunds();
     }
 
     public double getBalance(Player player) {
@@ -81,4 +239,30 @@ public class EconomyManager {
     public int getFreeDistance() {
         return plugin.getConfigManager().getFreeDistance();
     }
+
+    /**
+     * Importo in deposito in attesa di capture o release
+     */
+    public static final class Reservation {
+        public static final Reservation NONE = new Reservation(0, null, 0, "", 0);
+
+        private final long id;
+        private final OfflinePlayer player;
+        private final double amount;
+        private final String reason;
+        private final long expiresAt;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Reservation(long id, OfflinePlayer player, double amount, String reason, long expiresAt) {
+            this.id = id;
+            this.player = player;
+            this.amount = amount;
+            this.reason = reason;
+            this.expiresAt = expiresAt;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package it.samuconfaa.locateCities.managers;
+
+import it.samuconfaa.locateCities.database.GazetteerIndex;
+import it.samuconfaa.locateCities.utils.CityNames;
+import it.samuconfaa.locateCities.utils.NameSimilarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indice per la ricerca approssimata dei nomi città ("forse cercavi...").
+ *
+ * BK-tree sulla distanza di Levenshtein tra chiavi canoniche, senza accenti ("citta" trova
+ * "Città"): ogni nodo tiene i figli indicizzati per distanza,
+ * così una ricerca con tolleranza d visita solo i rami compatibili con la disuguaglianza
+ * triangolare. La distanza viene calcolata con un limite: appena supera la soglia utile per
+ * il nodo e i suoi figli il calcolo si interrompe e l'intero sottoalbero viene scartato.
+ *
+ * Il gazetteer su file è troppo grande per l'albero: viene interrogato solo sulle chiavi
+ * che condividono le prime lettere della ricerca.
+ *
+ * Immutabile, ricostruito in background insieme a {@link CompletionIndex}.
+ */
+public class FuzzyIndex {
+
+    public static final FuzzyIndex EMPTY = new FuzzyIndex(null, 0, null);
+
+    // Lettere iniziali che una chiave del gazetteer deve condividere con la ricerca
+    private static final int GAZETTEER_PREFIX = 3;
+    private static final int MAX_GAZETTEER_SCAN = 512;
+
+    private final Node root;
+    private final int size;
+    private final GazetteerIndex gazetteer;
+
+    private FuzzyIndex(Node root, int size, GazetteerIndex gazetteer) {
+        this.root = root;
+        this.size = size;
+        this.gazetteer = gazetteer;
+    }
+
+    /**
+     * Costruisce l'indice con gli stessi nomi e punteggi raccolti per il completamento
+     */
+    public static FuzzyIndex build(CompletionIndex.Builder source, GazetteerIndex gazetteer) {
+        Node root = null;
+        int size = 0;
+
+        for (Map.Entry<String, Integer> entry : source.scores().entrySet()) {
+            Node node = new Node(entry.getKey(), source.displayName(entry.getKey()), entry.getValue());
+            if (root == null) {
+                root = node;
+            } else {
+                root.insert(node);
+            }
+            size++;
+        }
+
+        return new FuzzyIndex(root, size, gazetteer);
+    }
+
+    /**
+     * Nomi entro la distanza tollerata per la lunghezza della ricerca, esclusa la ricerca stessa.
+     * Ordinati per distanza crescente e, a parità, per popolarità.
+     */
+    public List<String> findSimilar(String query, int limit) {
+        String key = CityNames.canonicalKey(query);
+        if (key.isEmpty() || limit <= 0) return new ArrayList<>();
+
+        int tolerance = toleranceFor(key.length());
+        List<Match> matches = new ArrayList<>();
+
+        if (root != null) {
+            search(root, key, tolerance, matches);
+        }
+        if (gazetteer != null) {
+            searchGazetteer(key, tolerance, matches);
+        }
+
+        matches.sort((a, b) -> a.distance != b.distance
+                ? Integer.compare(a.distance, b.distance)
+                : Integer.compare(b.score, a.score));
+
+        List<String> result = new ArrayList<>(Math.min(limit, matches.size()));
+        Set<String> seen = new HashSet<>();
+        for (Match match : matches) {
+            if (result.size() >= limit) break;
+            if (seen.add(match.key)) {
+                result.add(match.name);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Errori ammessi: 1 per nomi brevi, fino a 3 per nomi lunghi
+     */
+    static int toleranceFor(int length) {
+        if (length <= 4) return 1;
+        if (length <= 8) return 2;
+        return 3;
+    }
+
+    private void search(Node start, String key, int tolerance, List<Match> matches) {
+        List<Node> stack = new ArrayList<>();
+        stack.add(start);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.remove(stack.size() - 1);
+
+            // Oltre questa distanza né il nodo né alcun figlio possono rientrare nella tolleranza
+            int bound = Math.max(tolerance, node.maxChildDistance() + tolerance);
+            int distance = NameSimilarity.boundedDistance(key, node.key, bound);
+            if (distance > bound) continue;
+
+            if (distance <= tolerance && distance > 0) {
+                matches.add(new Match(node.key, node.name, node.score, distance));
+            }
+
+            if (node.children == null) continue;
+            int from = Math.max(1, distance - tolerance);
+            int to = Math.min(node.children.length - 1, distance + tolerance);
+            for (int d = from; d <= to; d++) {
+                if (node.children[d] != null) {
+                    stack.add(node.children[d]);
+                }
+            }
+        }
+    }
+
+    private void searchGazetteer(String key, int tolerance, List<Match> matches) {
+        if (key.length() < GAZETTEER_PREFIX) return;
+
+        for (int[] candidate : gazetteer.prefixRange(key.substring(0, GAZETTEER_PREFIX), MAX_GAZETTEER_SCAN)) {
+            String candidateKey = gazetteer.keyAt(candidate[0]);
+            if (Math.abs(candidateKey.length() - key.length()) > tolerance) continue;
+
+            int distance = NameSimilarity.boundedDistance(key, candidateKey, tolerance);
+            if (distance <= tolerance && distance > 0) {
+                // Punteggio del gazetteer: popolazione, sotto le città note al plugin a parità di distanza
+                matches.add(new Match(candidateKey, gazetteer.nameAt(candidate[0]),
+                        Math.min(candidate[1] / 1000, 9), distance));
+            }
+        }
+    }
+
+    private static class Node {
+        final String key;
+        final String name;
+        final int score;
+        // Figli indicizzati per distanza dal nodo
+        Node[] children;
+
+        Node(String key, String name, int score) {
+            this.key = key;
+            this.name = name;
+            this.score = score;
+        }
+
+        int maxChildDistance() {
+            return children == null ? 0 : children.length - 1;
+        }
+
+        void insert(Node node) {
+            Node current = this;
+            while (true) {
+                // Distanza esatta: serve per posizionare il figlio
+                int distance = NameSimilarity.boundedDistance(node.key, current.key, Integer.MAX_VALUE - 1);
+                if (distance == 0) return;
+
+                if (current.children == null) {
+                    current.children = new Node[distance + 1];
+                } else if (current.children.length <= distance) {
+                    current.children = Arrays.copyOf(current.children, distance + 1);
+                }
+
+                Node child = current.children[distance];
+                if (child == null) {
+                    current.children[distance] = node;
+                    return;
+                }
+                current = child;
+            }
+        }
+    }
+
+    private static class Match {
+        final String key;
+        final String name;
+        final int score;
+        final int distance;
+
+        Match(String key, String name, int score, int distance) {
+            this.key = key;
+            this.name = name;
+            this.score = score;
+            this.distance = distance;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+package it.samuconfaa.locateCities.managers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Scheduler delle richieste verso il geocoder esterno.
+ *
+ * Token bucket con rate e burst configurabili, coda di attesa limitata e due corsie
+ * di priorità: le ricerche dei giocatori passano sempre davanti a refresh e prefetch
+ * in background. Una richiesta che non potrebbe partire entro la sua scadenza viene
+ * rifiutata subito con {@link BusyException}, invece di scadere in timeout.
+ */
+public class GeocodingScheduler {
+
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    private final double ratePerMs;
+    private final double burst;
+    private final int maxQueued;
+
+    private final ArrayDeque<Task<?>> interactiveQueue = new ArrayDeque<>();
+    private final ArrayDeque<Task<?>> backgroundQueue = new ArrayDeque<>();
+
+    // Stato del bucket, protetto da this
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil = 0;
+    private boolean drainScheduled = false;
+
+    private final ScheduledExecutorService timer;
+
+    // Metriche
+    private final AtomicLong dispatched = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong expired = new AtomicLong(0);
+
+    public GeocodingScheduler(double ratePerSecond, int burst, int maxQueued) {
+        this.ratePerMs = ratePerSecond / 1000.0;
+        this.burst = Math.max(burst, 1);
+        this.maxQueued = maxQueued;
+        this.tokens = this.burst;
+        this.lastRefill = System.currentTimeMillis();
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LocateCities-Geocoder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Accoda una richiesta upstream.
+     *
+     * @param maxWaitMillis attesa massima in coda prima dell'invio
+     * @param action avvia la richiesta quando è disponibile un token (non deve bloccare)
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, long maxWaitMillis,
+                                           Supplier<CompletableFuture<T>> action) {
+        long now = System.currentTimeMillis();
+        Task<T> task = new Task<>(action, now + maxWaitMillis);
+
+        synchronized (this) {
+            refill(now);
+
+            int queuedAhead = priority == Priority.INTERACTIVE
+                    ? interactiveQueue.size()
+                    : interactiveQueue.size() + backgroundQueue.size();
+
+            if (interactiveQueue.size() + backgroundQueue.size() >= maxQueued) {
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new BusyException(0));
+            }
+
+            long estimatedStart = estimateStart(now, queuedAhead);
+            if (estimatedStart > task.deadline) {
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new BusyException(estimatedStart - now));
+            }
+
+            (priority == Priority.INTERACTIVE ? interactiveQueue : backgroundQueue).addLast(task);
+        }
+
+        drain();
+        return task.result;
+    }
+
+    /**
+     * Sospende gli invii (es. dopo un HTTP 429) e svuota il bucket
+     */
+    public synchronized void pause(long millis) {
+        long now = System.currentTimeMillis();
+        pausedUntil = Math.max(pausedUntil, now + millis);
+        tokens = 0;
+        lastRefill = now;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        List<Task<?>> pending = new ArrayList<>();
+        synchronized (this) {
+            pending.addAll(interactiveQueue);
+            pending.addAll(backgroundQueue);
+            interactiveQueue.clear();
+            backgroundQueue.clear();
+        }
+        for (Task<?> task : pending) {
+            task.result.completeExceptionally(new BusyException(0));
+        }
+    }
+
+    public synchronized int getQueuedCount() {
+        return interactiveQueue.size() + backgroundQueue.size();
+    }
+
+    public String getStats() {
+        return String.format("In coda: %d/%d, inviate: %d, rifiutate: %d, scadute in coda: %d",
+                getQueuedCount(), maxQueued, dispatched.get(), rejected.get(), expired.get());
+    }
+
+    private void drain() {
+        List<Task<?>> ready = new ArrayList<>();
+        List<Task<?>> late = new ArrayList<>();
+        long delay = -1;
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            refill(now);
+
+            while (now >= pausedUntil && tokens >= 1.0) {
+                Task<?> task = interactiveQueue.pollFirst();
+                if (task == null) task = backgroundQueue.pollFirst();
+                if (task == null) break;
+
+                if (now > task.deadline) {
+                    late.add(task);
+                    continue;
+                }
+
+                tokens -= 1.0;
+                ready.add(task);
+            }
+
+            if (!drainScheduled && !(interactiveQueue.isEmpty() && backgroundQueue.isEmpty())) {
+                drainScheduled = true;
+                delay = Math.max(pausedUntil - now, millisUntilToken());
+            }
+        }
+
+        // Avvio e completamenti fuori dal lock
+        for (Task<?> task : late) {
+            expired.incrementAndGet();
+            task.result.completeExceptionally(new BusyException(0));
+        }
+        for (Task<?> task : ready) {
+            dispatched.incrementAndGet();
+            task.start();
+        }
+
+        if (delay >= 0 && !timer.isShutdown()) {
+            timer.schedule(() -> {
+                synchronized (this) {
+                    drainScheduled = false;
+                }
+                drain();
+            }, Math.max(delay, 1), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerMs);
+            lastRefill = now;
+        }
+    }
+
+    private long millisUntilToken() {
+        return tokens >= 1.0 ? 0 : (long) Math.ceil((1.0 - tokens) / ratePerMs);
+    }
+
+    /**
+     * Istante stimato in cui partirà una richiesta con queuedAhead richieste davanti
+     */
+    private long estimateStart(long now, int queuedAhead) {
+        double needed = queuedAhead + 1 - tokens;
+        long start = Math.max(now, pausedUntil);
+        if (needed > 0) {
+            start += (long) Math.ceil(needed / ratePerMs);
+        }
+        return start;
+    }
+
+    private static class Task<T> {
+        final Supplier<CompletableFuture<T>> action;
+        final long deadline;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Task(Supplier<CompletableFuture<T>> action, long deadline) {
+            this.action = action;
+            this.deadline = deadline;
+        }
+
+        void start() {
+            try {
+                action.get().whenComplete((value, throwable) -> {
+                    if (throwable != null) {
+                        result.completeExceptionally(throwable);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Il geocoder è saturo: la richiesta non partirebbe in tempo utile
+     */
+    public static class BusyException extends RuntimeException {
+        private final long estimatedWaitMillis;
+
+        public BusyException(long estimatedWaitMillis) {
+            super(estimatedWaitMillis > 0
+                    ? "Servizio di ricerca occupato, riprova tra " + Math.max(1, estimatedWaitMillis / 1000) + " secondi."
+                    : "Servizio di ricerca occupato, riprova tra poco.");
+            this.estimatedWaitMillis = estimatedWaitMillis;
+        }
+
+        public long getEstimatedWaitMillis() {
+            return estimatedWaitMillis;
+        }
+    }
+}
\ No newline at end of file
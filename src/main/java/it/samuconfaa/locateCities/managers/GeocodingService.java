@@ -1,116 +1,144 @@
 package it.samuconfaa.locateCities.managers;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import it.samuconfaa.locateCities.data.CityData;
+import it.samuconfaa.locateCities.utils.CityNames;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 public class GeocodingService {
 
     private static final String NOMINATIM_URL = "https://nominatim.openstreetmap.org/search";
     private static final String USER_AGENT = "LocateCities-Minecraft-Plugin/1.0";
 
-    // Rate limiting più sicuro per Nominatim (1 richiesta ogni 1.5 secondi)
-    private static final long RATE_LIMIT_MS = 1500;
-    private static final long BURST_PROTECTION_MS = 5000; // 5 secondi se troppe richieste
+    // Pausa degli invii dopo un HTTP 429
+    private static final long BURST_PROTECTION_MS = 5000;
+
+    // Attesa massima in coda prima dell'invio, per corsia
+    private static final long INTERACTIVE_MAX_WAIT_MS = 5000;
+    private static final long BACKGROUND_MAX_WAIT_MS = 60000;
 
     // Limite massimo richieste per ora (Nominatim policy)
     private static final int MAX_REQUESTS_PER_HOUR = 3600;
 
+    private static final int MAX_RESPONSE_LENGTH = 50000; // Limite per evitare DoS (byte ricevuti e decompressi)
+
+    // Campi address in ordine di preferenza per il nome della città
+    private static final String[] CITY_FIELDS = {"city", "town", "village", "municipality", "county"};
+
+    // Caratteri HTML/XML e di controllo rimossi dai nomi restituiti
+    private static final Pattern UNSAFE_CHARS = Pattern.compile("[<>\"'&\\p{Cntrl}]");
+
     private final int timeout;
-    private final ConcurrentMap<String, Long> lastRequestTime = new ConcurrentHashMap<>();
-    private final AtomicLong globalLastRequest = new AtomicLong(0);
+    private final HttpClient httpClient;
+    private final GeocodingScheduler scheduler;
     private final AtomicLong requestCount = new AtomicLong(0);
     private final AtomicLong hourlyRequestReset = new AtomicLong(System.currentTimeMillis() + 3600000);
     private final Logger logger = Logger.getLogger(GeocodingService.class.getName());
 
-    private volatile boolean rateLimitExceeded = false;
     private volatile long rateLimitResetTime = 0;
 
-    public GeocodingService(int timeout) {
+    public GeocodingService(int timeout, double ratePerSecond, int burst, int maxQueued) {
         this.timeout = Math.max(timeout, 3000); // Minimo 3 secondi timeout
+        this.scheduler = new GeocodingScheduler(ratePerSecond, burst, maxQueued);
+
+        // Un solo client per tutto il plugin: riusa le connessioni e negozia HTTP/2 se disponibile
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(this.timeout))
+                .followRedirects(HttpClient.Redirect.NEVER) // Sicurezza contro redirect attacks
+                .build();
     }
 
     public CompletableFuture<CityData> searchCity(String cityName) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // Validazione input
-                if (!isValidCityName(cityName)) {
-                    throw new IllegalArgumentException("Nome città non valido: " + cityName);
-                }
+        return searchCity(cityName, GeocodingScheduler.Priority.INTERACTIVE);
+    }
 
-                // Controllo rate limiting avanzato
-                if (!checkRateLimit()) {
-                    long waitTime = (rateLimitResetTime - System.currentTimeMillis()) / 1000;
-                    throw new RuntimeException("Rate limit superato. Riprova tra " + waitTime + " secondi.");
-                }
+    public CompletableFuture<CityData> searchCity(String cityName, GeocodingScheduler.Priority priority) {
+        // Validazione input
+        if (!isValidCityName(cityName)) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Nome città non valido: " + cityName));
+        }
 
-                return searchCitySync(cityName);
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "Errore nella ricerca della città: " + cityName, e);
-                if (e instanceof RuntimeException) {
-                    throw (RuntimeException) e;
+        // Limite orario Nominatim
+        if (!checkHourlyLimit()) {
+            long waitTime = (rateLimitResetTime - System.currentTimeMillis()) / 1000;
+            return CompletableFuture.failedFuture(
+                    new RuntimeException("Rate limit superato. Riprova tra " + waitTime + " secondi."));
+        }
+
+        HttpRequest request;
+        try {
+            request = buildRequest(cityName);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // L'invio parte quando lo scheduler concede un token, nessun thread resta in attesa
+        long maxWait = priority == GeocodingScheduler.Priority.INTERACTIVE
+                ? INTERACTIVE_MAX_WAIT_MS : BACKGROUND_MAX_WAIT_MS;
+        CompletableFuture<HttpResponse<byte[]>> response = scheduler.submit(priority, maxWait, () -> {
+            requestCount.incrementAndGet();
+            return httpClient.sendAsync(request, GeocodingService::boundedBody);
+        });
+
+        CompletableFuture<CityData> result = response.thenApply(r -> handleResponse(r, cityName));
+        result.whenComplete((cityData, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause() : throwable;
+                if (cause instanceof GeocodingScheduler.BusyException) {
+                    logger.fine("Geocoder occupato, ricerca rifiutata: " + cityName);
+                } else {
+                    logger.log(Level.SEVERE, "Errore nella ricerca della città: " + cityName, cause);
                 }
-                throw new RuntimeException("Errore nella ricerca della città: " + e.getMessage(), e);
             }
         });
+        return result;
     }
 
-    private boolean checkRateLimit() {
+    private boolean checkHourlyLimit() {
         long now = System.currentTimeMillis();
 
         // Reset contatore orario
         if (now > hourlyRequestReset.get()) {
             requestCount.set(0);
             hourlyRequestReset.set(now + 3600000);
-            rateLimitExceeded = false;
         }
 
         // Controllo limite orario
         if (requestCount.get() >= MAX_REQUESTS_PER_HOUR) {
-            rateLimitExceeded = true;
             rateLimitResetTime = hourlyRequestReset.get();
             return false;
         }
 
-        // Controllo se in cooldown per rate limit
-        if (rateLimitExceeded && now < rateLimitResetTime) {
-            return false;
-        }
-
-        // Rate limiting globale con protezione burst
-        synchronized (this) {
-            long lastRequest = globalLastRequest.get();
-            long timeSinceLastRequest = now - lastRequest;
-
-            long requiredWait = rateLimitExceeded ? BURST_PROTECTION_MS : RATE_LIMIT_MS;
-
-            if (timeSinceLastRequest < requiredWait) {
-                try {
-                    Thread.sleep(requiredWait - timeSinceLastRequest);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("Interruzione durante rate limiting", e);
-                }
-            }
-
-            globalLastRequest.set(System.currentTimeMillis());
-            requestCount.incrementAndGet();
-        }
-
         return true;
     }
 
@@ -127,7 +155,7 @@ public class GeocodingService {
         }
 
         // Consenti solo caratteri alfanumerici, spazi, trattini e apostrofi
-        if (!trimmed.matches("^[a-zA-ZÀ-ÿ0-9\\s\\-'.,]+$")) {
+        if (!CityNames.isValidCityName(trimmed)) {
             return false;
         }
 
@@ -139,66 +167,70 @@ public class GeocodingService {
         return true;
     }
 
-    private CityData searchCitySync(String cityName) throws Exception {
-        String encodedCity = URLEncoder.encode(cityName.trim(), StandardCharsets.UTF_8.toString());
+    private HttpRequest buildRequest(String cityName) {
+        String encodedCity = URLEncoder.encode(cityName.trim(), StandardCharsets.UTF_8);
         String urlString = NOMINATIM_URL + "?q=" + encodedCity +
                 "&format=json&limit=1&addressdetails=1&accept-language=en";
 
-        URL url = new URL(urlString);
-        HttpURLConnection connection = null;
+        return HttpRequest.newBuilder(URI.create(urlString))
+                .GET()
+                .header("User-Agent", USER_AGENT)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .timeout(Duration.ofMillis(timeout))
+                .build();
+    }
 
-        try {
-            connection = (HttpURLConnection) url.openConnection();
-
-            // Configura la connessione con sicurezza
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("User-Agent", USER_AGENT);
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
-            connection.setConnectTimeout(timeout);
-            connection.setReadTimeout(timeout);
-            connection.setInstanceFollowRedirects(false); // Sicurezza contro redirect attacks
-
-            // Controlla il codice di risposta con gestione completa
-            int responseCode = connection.getResponseCode();
-            handleHttpResponseCode(responseCode, cityName);
-
-            // Legge la risposta
-            StringBuilder response = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-                String line;
-                int totalLength = 0;
-                final int MAX_RESPONSE_LENGTH = 50000; // Limite per evitare DoS
-
-                while ((line = reader.readLine()) != null) {
-                    totalLength += line.length();
-                    if (totalLength > MAX_RESPONSE_LENGTH) {
-                        throw new RuntimeException("Risposta API troppo grande, possibile attacco");
-                    }
-                    response.append(line);
-                }
-            }
+    /**
+     * Body raccolto dal client senza thread bloccati: oltre MAX_RESPONSE_LENGTH byte ricevuti la
+     * ricezione viene annullata, e anche la decompressione si ferma allo stesso limite.
+     * Il body degli errori HTTP viene scartato
+     */
+    private static HttpResponse.BodySubscriber<byte[]> boundedBody(HttpResponse.ResponseInfo info) {
+        if (info.statusCode() != 200) {
+            return HttpResponse.BodySubscribers.replacing(new byte[0]);
+        }
 
-            // Parsing JSON con validazione
-            return parseNominatimResponse(response.toString(), cityName);
+        boolean gzip = info.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+
+        BoundedBodySubscriber received = new BoundedBodySubscriber(MAX_RESPONSE_LENGTH);
+        return gzip ? HttpResponse.BodySubscribers.mapping(received, GeocodingService::gunzip) : received;
+    }
 
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
+    private static byte[] gunzip(byte[] compressed) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                if (out.size() + n > MAX_RESPONSE_LENGTH) {
+                    throw new IOException("Risposta API troppo grande, possibile attacco");
+                }
+                out.write(chunk, 0, n);
             }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
+    private CityData handleResponse(HttpResponse<byte[]> response, String cityName) {
+        // Controlla il codice di risposta con gestione completa
+        handleHttpResponseCode(response.statusCode(), cityName);
+
+        // Parsing JSON con validazione, su un body già in memoria
+        return parseNominatimResponse(new ByteArrayInputStream(response.body()), cityName);
+    }
+
     private void handleHttpResponseCode(int responseCode, String cityName) {
         switch (responseCode) {
             case 200:
-                // Reset rate limit exceeded flag on successful request
-                rateLimitExceeded = false;
                 break;
             case 429:
-                rateLimitExceeded = true;
-                rateLimitResetTime = System.currentTimeMillis() + BURST_PROTECTION_MS;
+                // Le richieste in coda ripartono dopo la pausa, se entro la loro scadenza
+                scheduler.pause(BURST_PROTECTION_MS);
                 throw new RuntimeException("Rate limit API superato. Riprova tra qualche minuto.");
             case 403:
                 logger.severe("Accesso negato all'API Nominatim - possibile ban IP");
@@ -217,45 +249,67 @@ public class GeocodingService {
         }
     }
 
-    private CityData parseNominatimResponse(String jsonResponse, String originalCityName) {
-        try {
-            // Validazione JSON
-            if (jsonResponse == null || jsonResponse.trim().isEmpty()) {
-                throw new RuntimeException("Risposta API vuota");
+    /**
+     * Parsing in streaming: legge solo il primo risultato e si ferma appena ha i campi necessari
+     */
+    private CityData parseNominatimResponse(InputStream body, String originalCityName) {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new RuntimeException("Risposta API non valida");
             }
 
-            JsonArray results = JsonParser.parseString(jsonResponse).getAsJsonArray();
-
-            if (results.size() == 0) {
+            reader.beginArray();
+            if (!reader.hasNext()) {
                 throw new RuntimeException("Città non trovata: " + originalCityName);
             }
 
-            JsonObject firstResult = results.get(0).getAsJsonObject();
+            String lat = null;
+            String lon = null;
+            String displayName = null;
+            Map<String, String> address = new HashMap<>();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "lat":
+                        lat = reader.nextString();
+                        break;
+                    case "lon":
+                        lon = reader.nextString();
+                        break;
+                    case "display_name":
+                        displayName = reader.nextString();
+                        break;
+                    case "address":
+                        readAddress(reader, address);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            // Gli altri risultati non servono: il reader viene chiuso senza leggerli
 
             // Validazione coordinate con controlli di sicurezza
-            if (!firstResult.has("lat") || !firstResult.has("lon")) {
+            if (lat == null || lon == null) {
                 throw new RuntimeException("Coordinate mancanti nella risposta API");
             }
 
-            double lat = firstResult.get("lat").getAsDouble();
-            double lon = firstResult.get("lon").getAsDouble();
+            double latitude = Double.parseDouble(lat);
+            double longitude = Double.parseDouble(lon);
 
             // Validazione coordinate completa
-            if (!isValidCoordinate(lat, lon)) {
-                logger.warning("Coordinate non valide ricevute dall'API: lat=" + lat + ", lon=" + lon);
+            if (!isValidCoordinate(latitude, longitude)) {
+                logger.warning("Coordinate non valide ricevute dall'API: lat=" + latitude + ", lon=" + longitude);
                 throw new RuntimeException("Coordinate non valide ricevute dall'API");
             }
 
-            String displayName = firstResult.has("display_name") ?
-                    firstResult.get("display_name").getAsString() : originalCityName;
-
             // Estrae il nome della città dal display_name o address
-            String cityName = extractCityName(firstResult, originalCityName);
+            String cityName = extractCityName(address, displayName, originalCityName);
 
             // Sanitizza il nome della città
             cityName = sanitizeCityName(cityName);
 
-            return new CityData(cityName, lat, lon);
+            return new CityData(cityName, latitude, longitude);
 
         } catch (Exception e) {
             logger.log(Level.WARNING, "Errore nel parsing della risposta JSON per: " + originalCityName, e);
@@ -266,6 +320,31 @@ public class GeocodingService {
         }
     }
 
+    private void readAddress(JsonReader reader, Map<String, String> address) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (isCityField(field) && reader.peek() == JsonToken.STRING) {
+                address.put(field, reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static boolean isCityField(String field) {
+        for (String cityField : CITY_FIELDS) {
+            if (cityField.equals(field)) return true;
+        }
+        return false;
+    }
+
     private boolean isValidCoordinate(double lat, double lon) {
         // Controllo NaN e Infinity
         if (Double.isNaN(lat) || Double.isNaN(lon) ||
@@ -283,9 +362,7 @@ public class GeocodingService {
         }
 
         // Rimuove caratteri potenzialmente pericolosi
-        String sanitized = cityName.trim()
-                .replaceAll("[<>\"'&]", "") // Rimuove caratteri HTML/XML
-                .replaceAll("[\\p{Cntrl}]", ""); // Rimuove caratteri di controllo
+        String sanitized = UNSAFE_CHARS.matcher(cityName.trim()).replaceAll(""); // HTML/XML e controllo
 
         if (sanitized.length() > 50) {
             sanitized = sanitized.substring(0, 50);
@@ -294,38 +371,21 @@ public class GeocodingService {
         return sanitized.isEmpty() ? "Unknown" : sanitized;
     }
 
-    private String extractCityName(JsonObject result, String originalName) {
-        try {
-            // Prova a estrarre dalla sezione address se disponibile
-            if (result.has("address")) {
-                JsonObject address = result.getAsJsonObject("address");
-
-                // Ordine di preferenza per il nome della città
-                String[] cityFields = {"city", "town", "village", "municipality", "county"};
-
-                for (String field : cityFields) {
-                    if (address.has(field)) {
-                        String cityName = address.get(field).getAsString();
-                        if (cityName != null && !cityName.trim().isEmpty()) {
-                            return cityName;
-                        }
-                    }
-                }
+    private String extractCityName(Map<String, String> address, String displayName, String originalName) {
+        // Prova a estrarre dalla sezione address se disponibile
+        for (String field : CITY_FIELDS) {
+            String cityName = address.get(field);
+            if (cityName != null && !cityName.trim().isEmpty()) {
+                return cityName;
             }
+        }
 
-            // Fallback: estrae il primo elemento dal display_name
-            if (result.has("display_name")) {
-                String displayName = result.get("display_name").getAsString();
-                if (displayName != null && displayName.contains(",")) {
-                    String[] parts = displayName.split(",");
-                    if (parts.length > 0 && !parts[0].trim().isEmpty()) {
-                        return parts[0].trim();
-                    }
-                }
+        // Fallback: estrae il primo elemento dal display_name
+        if (displayName != null && displayName.contains(",")) {
+            String first = displayName.substring(0, displayName.indexOf(',')).trim();
+            if (!first.isEmpty()) {
+                return first;
             }
-
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Errore nell'estrazione nome città", e);
         }
 
         return originalName; // Fallback al nome originale
@@ -338,18 +398,72 @@ public class GeocodingService {
         long now = System.currentTimeMillis();
         long timeToReset = (hourlyRequestReset.get() - now) / 1000 / 60; // minuti
 
-        return String.format("Richieste orarie: %d/%d, Reset in: %d min",
-                requestCount.get(), MAX_REQUESTS_PER_HOUR, Math.max(0, timeToReset));
+        return String.format("Richieste orarie: %d/%d, Reset in: %d min, %s",
+                requestCount.get(), MAX_REQUESTS_PER_HOUR, Math.max(0, timeToReset), scheduler.getStats());
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
     }
 
     /**
      * Forza reset del rate limiting (solo per admin)
      */
     public void resetRateLimit() {
-        rateLimitExceeded = false;
         rateLimitResetTime = 0;
         requestCount.set(0);
         hourlyRequestReset.set(System.currentTimeMillis() + 3600000);
         logger.info("Rate limit resettato manualmente");
     }
+
+    /**
+     * Come BodySubscribers.ofByteArray, ma annulla la ricezione appena il body supera maxBytes
+     */
+    private static final class BoundedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final int maxBytes;
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private Flow.Subscription subscription;
+
+        BoundedBodySubscriber(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) return;
+
+            for (ByteBuffer item : items) {
+                if (buffer.size() + item.remaining() > maxBytes) {
+                    subscription.cancel();
+                    body.completeExceptionally(new IOException("Risposta API troppo grande, possibile attacco"));
+                    return;
+                }
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                buffer.writeBytes(bytes);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(buffer.toByteArray());
+        }
+    }
 }
\ No newline at end of file
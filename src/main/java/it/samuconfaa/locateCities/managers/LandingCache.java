@@ -0,0 +1,223 @@
+package it.samuconfaa.locateCities.managers;
+
+import it.samuconfaa.locateCities.data.CityData;
+import it.samuconfaa.locateCities.database.LandingSpotStore;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Punti di atterraggio sicuri già verificati, per città e mondo.
+ *
+ * Le entry valgono per una sola proiezione (origine, scala, inversioni): quando la proiezione
+ * cambia la cache si svuota da sola alla prima richiesta. Il punto viene cercato attorno alla
+ * destinazione ma sempre nello stesso chunk, su uno snapshot: l'analisi non carica altri chunk
+ * e non occupa il main thread.
+ */
+public class LandingCache {
+
+    // Blocchi di distanza dalla destinazione entro cui cercare una colonna sicura
+    private static final int SEARCH_RADIUS = 6;
+
+    // Per nome: costanti assenti nelle versioni più vecchie non rompono il caricamento della classe
+    private static final Set<String> UNSAFE_GROUND = Set.of(
+            "MAGMA_BLOCK", "CACTUS", "CAMPFIRE", "SOUL_CAMPFIRE", "FIRE", "SOUL_FIRE",
+            "POWDER_SNOW", "SWEET_BERRY_BUSH", "POINTED_DRIPSTONE", "WITHER_ROSE");
+    private static final Set<String> LIQUIDS = Set.of("WATER", "LAVA", "BUBBLE_COLUMN");
+
+    private final LandingSpotStore store;
+    private final Logger logger;
+
+    // Accessi sincronizzati su this; ordine di accesso per l'eviction LRU
+    private final LinkedHashMap<String, CityData.MinecraftCoordinates> spots;
+    private long projectionVersion;
+    private volatile boolean dirty = false;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    public LandingCache(LandingSpotStore store, Logger logger, int maxEntries, long projectionVersion) {
+        this.store = store;
+        this.logger = logger;
+        this.projectionVersion = projectionVersion;
+        this.spots = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CityData.MinecraftCoordinates> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized CityData.MinecraftCoordinates get(String cityKey, String worldName, long version) {
+        resetIfStale(version);
+
+        CityData.MinecraftCoordinates spot = spots.get(key(cityKey, worldName));
+        if (spot != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return spot;
+    }
+
+    public synchronized void put(String cityKey, String worldName, long version, CityData.MinecraftCoordinates spot) {
+        resetIfStale(version);
+        spots.put(key(cityKey, worldName), spot);
+        dirty = true;
+    }
+
+    /**
+     * Dimentica tutti i punti: origine, scala o mondo target sono cambiati
+     */
+    public synchronized void invalidate() {
+        if (spots.isEmpty()) return;
+        spots.clear();
+        dirty = true;
+    }
+
+    public synchronized int size() {
+        return spots.size();
+    }
+
+    public String getStats() {
+        long total = hits.get() + misses.get();
+        double hitRate = total > 0 ? hits.get() * 100.0 / total : 0.0;
+        return String.format("atterraggi %d (hit %.1f%%)", size(), hitRate);
+    }
+
+    /**
+     * Carica lo snapshot su disco (thread I/O)
+     */
+    public void load() {
+        try {
+            long version;
+            synchronized (this) {
+                version = projectionVersion;
+            }
+
+            Map<String, CityData.MinecraftCoordinates> loaded = store.load(version);
+            synchronized (this) {
+                if (version != projectionVersion) return;
+                for (Map.Entry<String, CityData.MinecraftCoordinates> entry : loaded.entrySet()) {
+                    spots.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+
+            if (!loaded.isEmpty()) {
+                logger.info("Caricati " + loaded.size() + " punti di atterraggio dalla cache");
+            }
+        } catch (IOException e) {
+            logger.warning("Errore caricamento cache atterraggi: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Salva lo snapshot se qualcosa è cambiato (thread I/O)
+     */
+    public void save() {
+        if (!dirty) return;
+
+        Map<String, CityData.MinecraftCoordinates> snapshot;
+        long version;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(spots);
+            version = projectionVersion;
+            dirty = false;
+        }
+
+        try {
+            store.save(version, snapshot);
+        } catch (IOException e) {
+            dirty = true;
+            logger.warning("Errore salvataggio cache atterraggi: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cerca la colonna sicura più vicina a (x, z) nello stesso chunk, a spirale dal centro.
+     * Lo snapshot (con heightmap) va preso sul main thread; la ricerca gira su qualsiasi thread.
+     *
+     * @param minY altezza minima del mondo
+     * @param maxY altezza massima del mondo (esclusa)
+     * @return coordinate dei piedi del giocatore, o null se nessuna colonna è sicura
+     */
+    public static CityData.MinecraftCoordinates findSafeSpot(ChunkSnapshot snapshot, int minY, int maxY, int x, int z) {
+        int chunkX = x >> 4;
+        int chunkZ = z >> 4;
+
+        for (int radius = 0; radius <= SEARCH_RADIUS; radius++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    // Solo il perimetro dell'anello: l'interno è già stato visitato
+                    if (Math.abs(dx) != radius && Math.abs(dz) != radius) continue;
+
+                    int candidateX = x + dx;
+                    int candidateZ = z + dz;
+                    if (candidateX >> 4 != chunkX || candidateZ >> 4 != chunkZ) continue;
+
+                    int localX = candidateX & 15;
+                    int localZ = candidateZ & 15;
+                    int groundY = snapshot.getHighestBlockYAt(localX, localZ);
+                    if (isSafeGround(snapshot, minY, maxY, localX, groundY, localZ)) {
+                        return new CityData.MinecraftCoordinates(candidateX, candidateZ, groundY + 1);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Altezza dei piedi sopra il blocco più alto della colonna, senza verifiche di sicurezza
+     */
+    public static int surfaceY(ChunkSnapshot snapshot, int x, int z) {
+        return snapshot.getHighestBlockYAt(x & 15, z & 15) + 1;
+    }
+
+    private static boolean isSafeGround(ChunkSnapshot snapshot, int minY, int maxY, int x, int y, int z) {
+        if (y < minY || y >= maxY) return false;
+
+        Material type = snapshot.getBlockType(x, y, z);
+        if (!type.isSolid() || isLiquid(snapshot, type, x, y, z)) return false;
+
+        String name = type.name();
+        if (name.endsWith("_LEAVES") || UNSAFE_GROUND.contains(name)) return false;
+
+        // Due blocchi liberi sopra: piedi e testa
+        return isClear(snapshot, maxY, x, y + 1, z) && isClear(snapshot, maxY, x, y + 2, z);
+    }
+
+    // Attraversabile e innocuo: niente liquidi, fuoco o cespugli di bacche
+    private static boolean isClear(ChunkSnapshot snapshot, int maxY, int x, int y, int z) {
+        // Oltre il limite del mondo c'è solo aria (e lo snapshot non ha dati)
+        if (y >= maxY) return true;
+
+        Material type = snapshot.getBlockType(x, y, z);
+        return !type.isSolid() && !isLiquid(snapshot, type, x, y, z) && !UNSAFE_GROUND.contains(type.name());
+    }
+
+    private static boolean isLiquid(ChunkSnapshot snapshot, Material type, int x, int y, int z) {
+        if (LIQUIDS.contains(type.name())) return true;
+        BlockData data = snapshot.getBlockData(x, y, z);
+        return data instanceof Waterlogged && ((Waterlogged) data).isWaterlogged();
+    }
+
+    private void resetIfStale(long version) {
+        if (version == projectionVersion) return;
+        projectionVersion = version;
+        spots.clear();
+        dirty = true;
+    }
+
+    private static String key(String cityKey, String worldName) {
+        return cityKey + '|' + worldName;
+    }
+}
\ No newline at end of file
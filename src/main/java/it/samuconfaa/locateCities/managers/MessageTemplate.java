@@ -0,0 +1,124 @@
+package it.samuconfaa.locateCities.managers;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messaggio del config già pronto per l'invio.
+ *
+ * Compilato una volta al caricamento: codici colore tradotti, testo diviso in parti
+ * letterali e placeholder {nome}. Il rendering è un solo passaggio su StringBuilder.
+ * I valori sostituiti non passano dalla traduzione dei colori.
+ */
+public final class MessageTemplate {
+
+    private static final int MAX_PLACEHOLDER_LENGTH = 20;
+    private static final int MAX_VALUE_LENGTH = 100;
+
+    // literals.length == names.length + 1: letterale, placeholder, letterale, ...
+    private final String[] literals;
+    private final String[] names;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, String[] names) {
+        this.literals = literals;
+        this.names = names;
+
+        int length = 0;
+        for (String literal : literals) length += literal.length();
+        this.literalLength = length;
+    }
+
+    /**
+     * @param message testo già validato, con codici colore '&'
+     */
+    public static MessageTemplate compile(String message) {
+        String translated = ChatColor.translateAlternateColorCodes('&', message);
+
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int i = 0;
+        while (i < translated.length()) {
+            char c = translated.charAt(i);
+            if (c == '{') {
+                int end = translated.indexOf('}', i + 1);
+                if (end > i + 1 && isValidPlaceholder(translated, i + 1, end)) {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    names.add(translated.substring(i + 1, end));
+                    i = end + 1;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        literals.add(literal.toString());
+
+        return new MessageTemplate(literals.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    /**
+     * @param placeholders coppie nome, valore; i placeholder senza valore valido restano come {nome}
+     */
+    public String render(String... placeholders) {
+        if (names.length == 0) return literals[0];
+
+        StringBuilder result = new StringBuilder(literalLength + names.length * 16);
+        for (int i = 0; i < names.length; i++) {
+            result.append(literals[i]);
+
+            String value = valueOf(names[i], placeholders);
+            if (value != null) {
+                result.append(value);
+            } else {
+                result.append('{').append(names[i]).append('}');
+            }
+        }
+        result.append(literals[names.length]);
+        return result.toString();
+    }
+
+    private static String valueOf(String name, String[] placeholders) {
+        for (int i = 0; i + 1 < placeholders.length; i += 2) {
+            if (name.equals(placeholders[i])) {
+                String value = placeholders[i + 1];
+                return isValidPlaceholderValue(value) ? value : null;
+            }
+        }
+        return null;
+    }
+
+    // Solo placeholder alfanumerici con underscore
+    private static boolean isValidPlaceholder(String text, int from, int to) {
+        if (to - from > MAX_PLACEHOLDER_LENGTH) return false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isValidPlaceholderValue(String value) {
+        if (value == null) {
+            return false;
+        }
+
+        // Limita lunghezza e rimuove caratteri potenzialmente pericolosi
+        if (value.length() > MAX_VALUE_LENGTH) {
+            return false;
+        }
+
+        // Evita caratteri HTML/script pericolosi
+        return !value.contains("<script>") &&
+                !value.contains("<iframe>") &&
+                !value.contains("javascript:") &&
+                !value.contains("data:text/html");
+    }
+}
\ No newline at end of file
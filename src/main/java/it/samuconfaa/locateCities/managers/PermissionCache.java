@@ -0,0 +1,95 @@
+package it.samuconfaa.locateCities.managers;
+
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Permessi del plugin già risolti, per giocatore.
+ *
+ * Con plugin di permessi a ereditarietà profonda ogni hasPermission ha un costo misurabile:
+ * i permessi che contano (VIP, free, noratelimit, teleport) vengono letti una volta e
+ * conservati in un'istantanea immutabile. L'istantanea decade con il config da cui dipende
+ * (reload o modifiche admin), al cambio mondo, all'uscita del giocatore o dopo MAX_AGE_MS,
+ * perché Bukkit non notifica le modifiche fatte dai plugin di permessi.
+ */
+public class PermissionCache {
+
+    private static final long MAX_AGE_MS = 30_000L;
+
+    private final ConfigManager configManager;
+    private final ConcurrentHashMap<UUID, Eligibility> snapshots = new ConcurrentHashMap<>();
+
+    public PermissionCache(ConfigManager configManager) {
+        this.configManager = configManager;
+    }
+
+    public Eligibility get(Player player) {
+        ConfigManager.Settings settings = configManager.getSettings();
+        long now = System.currentTimeMillis();
+
+        Eligibility eligibility = snapshots.get(player.getUniqueId());
+        if (eligibility != null && eligibility.settings == settings && now - eligibility.computedAt < MAX_AGE_MS) {
+            return eligibility;
+        }
+
+        eligibility = new Eligibility(player, settings, now);
+        snapshots.put(player.getUniqueId(), eligibility);
+        return eligibility;
+    }
+
+    public void invalidate(UUID playerId) {
+        snapshots.remove(playerId);
+    }
+
+    public void invalidateAll() {
+        snapshots.clear();
+    }
+
+    /**
+     * Istantanea dei permessi di un giocatore
+     */
+    public static final class Eligibility {
+        private final boolean vipPermission;
+        private final boolean admin;
+        private final boolean free;
+        private final boolean noRateLimit;
+        private final boolean teleportPermission;
+        private final boolean vipSystemEnabled;
+
+        private final ConfigManager.Settings settings;
+        private final long computedAt;
+
+        // Nodo VIP e sistema VIP dallo stesso snapshot con cui l'istantanea viene poi convalidata
+        private Eligibility(Player player, ConfigManager.Settings settings, long computedAt) {
+            this.vipPermission = player.hasPermission(settings.getVipTeleportPermission());
+            this.admin = player.hasPermission("locatecities.admin");
+            this.free = player.hasPermission("locatecities.free");
+            this.noRateLimit = player.hasPermission("locatecities.noratelimit");
+            this.teleportPermission = player.hasPermission("locatecities.teleport");
+            this.vipSystemEnabled = settings.isVipTeleportSystemEnabled();
+            this.settings = settings;
+            this.computedAt = computedAt;
+        }
+
+        public boolean hasVipPermission() { return vipPermission; }
+        public boolean isFree() { return free; }
+        public boolean isNoRateLimit() { return noRateLimit; }
+        public boolean hasTeleportPermission() { return teleportPermission; }
+
+        /**
+         * Accesso VIP: permesso VIP configurato, admin o free
+         */
+        public boolean hasVipAccess() {
+            return vipPermission || admin || free;
+        }
+
+        /**
+         * Teletrasporto consentito: accesso VIP se il sistema VIP è attivo, altrimenti locatecities.teleport
+         */
+        public boolean canTeleport() {
+            return vipSystemEnabled ? hasVipAccess() : teleportPermission;
+        }
+    }
+}
\ No newline at end of file
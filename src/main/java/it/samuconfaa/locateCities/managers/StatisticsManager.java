@@ -1,6 +1,7 @@
 package it.samuconfaa.locateCities.managers;
 
 import it.samuconfaa.locateCities.LocateCities;
+import it.samuconfaa.locateCities.utils.CityNames;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
@@ -11,6 +12,7 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 public class StatisticsManager {
@@ -77,8 +79,9 @@ public class StatisticsManager {
                 apiCalls.set(config.getInt("general.api_calls", 0));
 
                 // Carica con limite per prevenire memory issues
-                loadLimitedSection(config, "cities", citySearchCount, MAX_CITY_ENTRIES);
-                loadLimitedSection(config, "players", playerSearchCount, MAX_PLAYER_ENTRIES);
+                // Le città salvate dalle versioni precedenti vengono riportate alla chiave canonica
+                loadLimitedSection(config, "cities", citySearchCount, MAX_CITY_ENTRIES, CityNames::canonicalKey);
+                loadLimitedSection(config, "players", playerSearchCount, MAX_PLAYER_ENTRIES, UnaryOperator.identity());
 
                 plugin.getLogger().info("Statistiche caricate: " + totalSearches.get() + " ricerche totali");
 
@@ -89,7 +92,8 @@ public class StatisticsManager {
     }
 
     private void loadLimitedSection(FileConfiguration config, String section,
-                                    ConcurrentHashMap<String, AtomicInteger> map, int maxEntries) {
+                                    ConcurrentHashMap<String, AtomicInteger> map, int maxEntries,
+                                    UnaryOperator<String> keyMapper) {
         if (!config.isConfigurationSection(section)) return;
 
         Set<String> keys = config.getConfigurationSection(section).getKeys(false);
@@ -104,7 +108,7 @@ public class StatisticsManager {
                 .forEach(key -> {
                     int count = config.getInt(section + "." + key, 0);
                     if (count > 0) {
-                        map.put(key, new AtomicInteger(count));
+                        map.computeIfAbsent(keyMapper.apply(key), k -> new AtomicInteger(0)).addAndGet(count);
                     }
                 });
     }
@@ -151,7 +155,7 @@ public class StatisticsManager {
     public void recordSearch(String cityName, Player player, boolean fromCache) {
         totalSearches.incrementAndGet();
 
-        String normalizedCity = cityName.toLowerCase().trim();
+        String normalizedCity = CityNames.canonicalKey(cityName);
 
         // Usa computeIfAbsent per thread safety
         citySearchCount.computeIfAbsent(normalizedCity, k -> new AtomicInteger(0)).incrementAndGet();
@@ -205,7 +209,7 @@ public class StatisticsManager {
     }
 
     public int getCitySearchCount(String cityName) {
-        AtomicInteger count = citySearchCount.get(cityName.toLowerCase());
+        AtomicInteger count = citySearchCount.get(CityNames.canonicalKey(cityName));
         return count != null ? count.get() : 0;
     }
 
@@ -214,65 +218,6 @@ public class StatisticsManager {
         return count != null ? count.get() : 0;
     }
 
-    // Algoritmo di similarità ottimizzato
-    public List<String> getNearCities(String cityName, int limit) {
-        String normalizedName = cityName.toLowerCase().trim();
-
-        return citySearchCount.entrySet().parallelStream()
-                .filter(entry -> !entry.getKey().equals(normalizedName))
-                .filter(entry -> {
-                    String city = entry.getKey();
-                    // Algoritmo di similarità semplificato per performance
-                    return city.contains(normalizedName) ||
-                            normalizedName.contains(city) ||
-                            calculateSimilarity(city, normalizedName) > 0.5;
-                })
-                .sorted((e1, e2) -> Integer.compare(e2.getValue().get(), e1.getValue().get()))
-                .limit(limit)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-    }
-
-    private double calculateSimilarity(String s1, String s2) {
-        if (s1.equals(s2)) return 1.0;
-
-        int maxLen = Math.max(s1.length(), s2.length());
-        if (maxLen == 0) return 1.0;
-
-        return 1.0 - (double) levenshteinDistance(s1, s2) / maxLen;
-    }
-
-    private int levenshteinDistance(String s1, String s2) {
-        // Implementazione ottimizzata di Levenshtein
-        if (s1.length() > s2.length()) {
-            String temp = s1;
-            s1 = s2;
-            s2 = temp;
-        }
-
-        int[] previousRow = new int[s1.length() + 1];
-        for (int i = 0; i <= s1.length(); i++) {
-            previousRow[i] = i;
-        }
-
-        for (int i = 1; i <= s2.length(); i++) {
-            int[] currentRow = new int[s1.length() + 1];
-            currentRow[0] = i;
-
-            for (int j = 1; j <= s1.length(); j++) {
-                int cost = s1.charAt(j - 1) == s2.charAt(i - 1) ? 0 : 1;
-                currentRow[j] = Math.min(
-                        Math.min(currentRow[j - 1] + 1, previousRow[j] + 1),
-                        previousRow[j - 1] + cost
-                );
-            }
-
-            previousRow = currentRow;
-        }
-
-        return previousRow[s1.length()];
-    }
-
     public void saveStatistics() {
         // Skip se salvato di recente
         long now = System.currentTimeMillis();
@@ -0,0 +1,169 @@
+package it.samuconfaa.locateCities.utils;
+
+import java.text.Normalizer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normalizzazione unica dei nomi città.
+ *
+ * Ogni cache, indice e statistica usa la chiave canonica prodotta qui: decomposizione
+ * Unicode NFKD senza segni diacritici, minuscolo, spazi compattati e alias risolti.
+ * "Città del Messico", "citta del messico" e "CITTÀ  DEL MESSICO" diventano la stessa chiave.
+ *
+ * Le chiavi vengono internate in un pool limitato: la stessa città è un'unica istanza
+ * String condivisa tra cache, indici e statistiche.
+ */
+public final class CityNames {
+
+    private CityNames() {} // Prevent instantiation
+
+    public static final int MAX_NAME_LENGTH = 100;
+
+    private static final int MAX_INTERNED = 50_000;
+    private static final ConcurrentHashMap<String, String> INTERNED = new ConcurrentHashMap<>();
+
+    // Nomi alternativi comuni delle città integrate, già in forma canonica
+    private static final Map<String, String> ALIASES = Map.ofEntries(
+            Map.entry("nyc", "new york"),
+            Map.entry("new york city", "new york"),
+            Map.entry("london", "londra"),
+            Map.entry("paris", "parigi"),
+            Map.entry("berlin", "berlino"),
+            Map.entry("brussels", "bruxelles"),
+            Map.entry("brussel", "bruxelles"),
+            Map.entry("wien", "vienna"),
+            Map.entry("prague", "praga"),
+            Map.entry("praha", "praga"),
+            Map.entry("warsaw", "varsavia"),
+            Map.entry("warszawa", "varsavia"),
+            Map.entry("stockholm", "stoccolma"),
+            Map.entry("beijing", "pechino"),
+            Map.entry("sao paulo", "san paolo"),
+            Map.entry("mexico city", "citta del messico"),
+            Map.entry("ciudad de mexico", "citta del messico"),
+            Map.entry("cairo", "il cairo"),
+            Map.entry("rome", "roma"),
+            Map.entry("milan", "milano"),
+            Map.entry("naples", "napoli"),
+            Map.entry("turin", "torino"),
+            Map.entry("florence", "firenze"),
+            Map.entry("venice", "venezia"),
+            Map.entry("genoa", "genova")
+    );
+
+    /**
+     * Chiave canonica per cache, indici e statistiche (con alias risolti e internata)
+     */
+    public static String canonicalKey(String name) {
+        String folded = foldKey(name);
+        String key = ALIASES.getOrDefault(folded, folded);
+        return intern(key);
+    }
+
+    /**
+     * Solo normalizzazione, senza alias: per prefissi del tab completion e confronti approssimati
+     */
+    public static String foldKey(String name) {
+        if (name == null) return "";
+        if (isFolded(name)) return name;
+
+        String source = name;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                source = Normalizer.normalize(name, Normalizer.Form.NFKD);
+                break;
+            }
+        }
+
+        StringBuilder key = new StringBuilder(source.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < source.length(); ) {
+            int codePoint = source.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                pendingSpace = key.length() > 0;
+                continue;
+            }
+
+            int type = Character.getType(codePoint);
+            if (type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+                    || type == Character.ENCLOSING_MARK || type == Character.CONTROL) {
+                continue;
+            }
+
+            if (pendingSpace) {
+                key.append(' ');
+                pendingSpace = false;
+            }
+            key.appendCodePoint(Character.toLowerCase(codePoint));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Nome città accettabile: lettere latine (anche accentate), cifre, spazi e - ' . ,
+     */
+    public static boolean isValidCityName(String name) {
+        if (name == null || name.isEmpty() || name.length() > MAX_NAME_LENGTH) return false;
+
+        boolean hasContent = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (isLatinLetter(c) || (c >= '0' && c <= '9')) {
+                hasContent = true;
+            } else if (!isWhitespace(c) && c != '-' && c != '\'' && c != '.' && c != ',') {
+                return false;
+            }
+        }
+        return hasContent;
+    }
+
+    /**
+     * Almeno una lettera a-z/A-Z
+     */
+    public static boolean containsAsciiLetter(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) return true;
+        }
+        return false;
+    }
+
+    private static boolean isLatinLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= 'À' && c <= 'ÿ');
+    }
+
+    // Stessi caratteri di \s nelle regex Java
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Già in forma canonica: solo a-z, cifre, punteggiatura ASCII e spazi singoli interni
+     */
+    private static boolean isFolded(String name) {
+        if (name.isEmpty()) return true;
+        if (name.charAt(0) == ' ' || name.charAt(name.length() - 1) == ' ') return false;
+
+        char previous = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80 || (c >= 'A' && c <= 'Z') || c < ' ' || (c == ' ' && previous == ' ')) {
+                return false;
+            }
+            previous = c;
+        }
+        return true;
+    }
+
+    private static String intern(String key) {
+        String existing = INTERNED.get(key);
+        if (existing != null) return existing;
+        if (INTERNED.size() >= MAX_INTERNED) return key;
+
+        existing = INTERNED.putIfAbsent(key, key);
+        return existing != null ? existing : key;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package it.samuconfaa.locateCities.utils;
+
+/**
+ * Distanza di edit tra nomi città per la ricerca approssimata.
+ *
+ * Levenshtein a banda limitata sui code point: vengono calcolate solo le celle entro
+ * {@code bound} dalla diagonale e il calcolo si ferma appena un'intera riga supera la soglia.
+ * I buffer sono per thread e riusati, quindi una comparazione non alloca.
+ * Gli accenti vanno tolti prima, con {@link CityNames#canonicalKey(String)}.
+ */
+public final class NameSimilarity {
+
+    private NameSimilarity() {} // Prevent instantiation
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * Distanza di Levenshtein tra a e b se non supera bound, altrimenti bound + 1
+     */
+    public static int boundedDistance(String a, String b, int bound) {
+        Buffers buffers = BUFFERS.get();
+        int n = buffers.loadLeft(a);
+        int m = buffers.loadRight(b);
+        int[] left = buffers.left;
+        int[] right = buffers.right;
+
+        // left è sempre il più corto: la riga DP ha lunghezza minima
+        if (n > m) {
+            int[] swap = left;
+            left = right;
+            right = swap;
+            int length = n;
+            n = m;
+            m = length;
+        }
+
+        if (m - n > bound) return bound + 1;
+        if (n == 0) return m;
+
+        bound = Math.min(bound, m);
+        int limit = bound + 1;
+
+        int[] previous = buffers.row(0, n + 1);
+        int[] current = buffers.row(1, n + 1);
+
+        for (int j = 0; j <= n; j++) {
+            previous[j] = Math.min(j, limit);
+        }
+
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - bound);
+            int to = Math.min(n, i + bound);
+
+            current[from - 1] = from == 1 ? Math.min(i, limit) : limit;
+            int rowMin = current[from - 1];
+            int c = right[i - 1];
+
+            for (int j = from; j <= to; j++) {
+                int cost = left[j - 1] == c ? 0 : 1;
+                int value = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                value = Math.min(value, limit);
+                current[j] = value;
+                if (value < rowMin) rowMin = value;
+            }
+
+            // Fuori banda: la riga successiva non deve leggere valori di iterazioni precedenti
+            if (to < n) {
+                current[to + 1] = limit;
+            }
+
+            if (rowMin > bound) return limit;
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[n];
+    }
+
+    private static final class Buffers {
+        int[] left = new int[32];
+        int[] right = new int[32];
+        private final int[][] rows = {new int[33], new int[33]};
+
+        int loadLeft(String s) {
+            left = ensure(left, s.length());
+            return toCodePoints(s, left);
+        }
+
+        int loadRight(String s) {
+            right = ensure(right, s.length());
+            return toCodePoints(s, right);
+        }
+
+        int[] row(int index, int length) {
+            if (rows[index].length < length) {
+                rows[index] = new int[Math.max(length, rows[index].length * 2)];
+            }
+            return rows[index];
+        }
+
+        private static int[] ensure(int[] buffer, int length) {
+            return buffer.length >= length ? buffer : new int[Math.max(length, buffer.length * 2)];
+        }
+
+        private static int toCodePoints(String s, int[] target) {
+            int count = 0;
+            for (int i = 0; i < s.length(); ) {
+                int codePoint = s.codePointAt(i);
+                target[count++] = codePoint;
+                i += Character.charCount(codePoint);
+            }
+            return count;
+        }
+    }
+}
\ No newline at end of file
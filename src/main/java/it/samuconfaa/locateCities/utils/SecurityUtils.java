@@ -12,8 +12,11 @@ public final class SecurityUtils {
 
     // Pattern di validazione
     private static final Pattern PLAYER_NAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_-]{1,16}$");
-    private static final Pattern CITY_NAME_PATTERN = Pattern.compile("^[a-zA-ZÀ-ÿ0-9\\s\\-'.,]{1,100}$");
     private static final Pattern SAFE_STRING_PATTERN = Pattern.compile("^[\\p{L}\\p{N}\\p{P}\\p{Z}&&[^<>\"'&]]*$");
+    private static final Pattern WORLD_NAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_-]{1,50}$");
+    private static final Pattern PLAYER_NAME_INVALID_CHARS = Pattern.compile("[^a-zA-Z0-9_-]");
+    private static final Pattern HTML_CHARS = Pattern.compile("[<>\"'&]");
+    private static final Pattern HTML_AND_CONTROL_CHARS = Pattern.compile("[<>\"'&\\p{Cntrl}]");
 
     // Limiti di sicurezza
     public static final int MAX_PLAYER_NAME_LENGTH = 16;
@@ -39,7 +42,14 @@ public final class SecurityUtils {
         return cityName != null &&
                 !cityName.trim().isEmpty() &&
                 cityName.length() <= MAX_CITY_NAME_LENGTH &&
-                CITY_NAME_PATTERN.matcher(cityName).matches();
+                CityNames.isValidCityName(cityName);
+    }
+
+    /**
+     * Valida un nome mondo (lettere, numeri, underscore e trattini)
+     */
+    public static boolean isValidWorldName(String worldName) {
+        return worldName != null && WORLD_NAME_PATTERN.matcher(worldName).matches();
     }
 
     /**
@@ -48,7 +58,7 @@ public final class SecurityUtils {
     public static String sanitizePlayerName(String playerName) {
         if (playerName == null) return "";
 
-        String sanitized = playerName.trim().replaceAll("[^a-zA-Z0-9_-]", "");
+        String sanitized = PLAYER_NAME_INVALID_CHARS.matcher(playerName.trim()).replaceAll("");
 
         if (sanitized.length() > MAX_PLAYER_NAME_LENGTH) {
             sanitized = sanitized.substring(0, MAX_PLAYER_NAME_LENGTH);
@@ -66,7 +76,7 @@ public final class SecurityUtils {
         String sanitized = cityName.trim();
 
         // Rimuovi caratteri potenzialmente pericolosi
-        sanitized = sanitized.replaceAll("[<>\"'&]", "");
+        sanitized = HTML_CHARS.matcher(sanitized).replaceAll("");
 
         if (sanitized.length() > MAX_CITY_NAME_LENGTH) {
             sanitized = sanitized.substring(0, MAX_CITY_NAME_LENGTH);
@@ -116,11 +126,8 @@ public final class SecurityUtils {
 
         String sanitized = input.trim();
 
-        // Rimuovi caratteri HTML/XML pericolosi
-        sanitized = sanitized.replaceAll("[<>\"'&]", "");
-
-        // Rimuovi caratteri di controllo
-        sanitized = sanitized.replaceAll("[\\p{Cntrl}]", "");
+        // Rimuovi caratteri HTML/XML pericolosi e caratteri di controllo
+        sanitized = HTML_AND_CONTROL_CHARS.matcher(sanitized).replaceAll("");
 
         if (sanitized.length() > MAX_MESSAGE_LENGTH) {
             sanitized = sanitized.substring(0, MAX_MESSAGE_LENGTH);
@@ -262,7 +269,7 @@ public final class SecurityUtils {
         }
 
         // Deve contenere almeno un carattere alfabetico
-        if (!trimmed.matches(".*[a-zA-Z].*")) {
+        if (!CityNames.containsAsciiLetter(trimmed)) {
             return false;
         }
 
@@ -0,0 +1,112 @@
+package it.samuconfaa.locateCities.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Il kernel a banda deve coincidere con la Levenshtein a matrice completa, troncata a bound + 1
+ */
+class NameSimilarityTest {
+
+    // Minuscole, accentate e un code point fuori dal BMP (due char in UTF-16)
+    private static final int[] ALPHABET = {'a', 'b', 'c', ' ', '\'', 'à', 'è', 0x1F3D9};
+
+    @Test
+    void matchesFullMatrixOnRandomStrings() {
+        Random random = new Random(20260117L);
+        for (int i = 0; i < 20_000; i++) {
+            String a = randomString(random, random.nextInt(13));
+            String b = random.nextInt(4) == 0 ? mutate(random, a) : randomString(random, random.nextInt(13));
+            int bound = random.nextInt(7);
+
+            assertEquals(expected(a, b, bound), NameSimilarity.boundedDistance(a, b, bound),
+                    () -> "'" + a + "' / '" + b + "' con bound " + bound);
+        }
+    }
+
+    @Test
+    void emptyStrings() {
+        assertEquals(0, NameSimilarity.boundedDistance("", "", 0));
+        assertEquals(3, NameSimilarity.boundedDistance("", "bar", 3));
+        assertEquals(3, NameSimilarity.boundedDistance("bar", "", 5));
+        assertEquals(2, NameSimilarity.boundedDistance("", "bari", 1));
+    }
+
+    @Test
+    void equalStrings() {
+        assertEquals(0, NameSimilarity.boundedDistance("roma", "roma", 0));
+        assertEquals(0, NameSimilarity.boundedDistance("città", "città", 2));
+    }
+
+    @Test
+    void distanceAtBound() {
+        // "milano" -> "melano" -> "melani": due sostituzioni
+        assertEquals(2, NameSimilarity.boundedDistance("milano", "melani", 2));
+        // "torino" -> "trino": una cancellazione
+        assertEquals(1, NameSimilarity.boundedDistance("torino", "trino", 1));
+    }
+
+    @Test
+    void distanceJustOverBound() {
+        assertEquals(2, NameSimilarity.boundedDistance("milano", "melani", 1));
+        assertEquals(1, NameSimilarity.boundedDistance("torino", "trino", 0));
+        // Differenza di lunghezza oltre la banda: uscita anticipata
+        assertEquals(3, NameSimilarity.boundedDistance("bari", "barcellona", 2));
+    }
+
+    @Test
+    void codePointsCountAsOneEdit() {
+        String skyline = new String(Character.toChars(0x1F3D9));
+        assertEquals(1, NameSimilarity.boundedDistance("roma", "roma" + skyline, 1));
+        assertEquals(1, NameSimilarity.boundedDistance("citta", "città", 1));
+    }
+
+    private static int expected(String a, String b, int bound) {
+        return Math.min(fullMatrix(a, b), bound + 1);
+    }
+
+    // Riferimento: matrice (n + 1) x (m + 1) senza banda né uscite anticipate
+    private static int fullMatrix(String a, String b) {
+        int[] left = a.codePoints().toArray();
+        int[] right = b.codePoints().toArray();
+        int[][] d = new int[left.length + 1][right.length + 1];
+
+        for (int i = 0; i <= left.length; i++) d[i][0] = i;
+        for (int j = 0; j <= right.length; j++) d[0][j] = j;
+
+        for (int i = 1; i <= left.length; i++) {
+            for (int j = 1; j <= right.length; j++) {
+                int cost = left[i - 1] == right[j - 1] ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            }
+        }
+        return d[left.length][right.length];
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.appendCodePoint(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return builder.toString();
+    }
+
+    // Poche modifiche: distanze vicine alla banda, il caso che conta
+    private static String mutate(Random random, String source) {
+        StringBuilder builder = new StringBuilder(source);
+        int edits = random.nextInt(4);
+        for (int i = 0; i < edits; i++) {
+            int position = builder.length() > 0 ? random.nextInt(builder.length()) : 0;
+            char replacement = (char) ALPHABET[random.nextInt(ALPHABET.length - 1)];
+            switch (random.nextInt(3)) {
+                case 0 -> builder.insert(position, replacement);
+                case 1 -> { if (builder.length() > 0) builder.deleteCharAt(position); }
+                default -> { if (builder.length() > 0) builder.setCharAt(position, replacement); }
+            }
+        }
+        return builder.toString();
+    }
+}
\ No newline at end of file